@@ -0,0 +1,97 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Locates the benchmark inputs.
+ *
+ * <p>The inputs are a directory, given by the {@value #PROPERTY} system property, holding an mcp config
+ * {@code srg.zip}, an mcp snapshot {@code mcp.zip} and an {@code intermediary.jar}, laid out like the
+ * artifacts the plugin resolves.</p>
+ */
+public final class Fixtures {
+
+  public static final String PROPERTY = "mcptiny.fixtures";
+
+  private Fixtures() {}
+
+  public static File directory() {
+    @Nullable String path = System.getProperty(PROPERTY);
+    if (path == null) {
+      throw new IllegalStateException("Set the " + PROPERTY + " system property to a fixture directory");
+    }
+    File ret = new File(path);
+    if (!ret.isDirectory()) {
+      throw new IllegalStateException("Fixture directory " + ret + " does not exist");
+    }
+    return ret;
+  }
+
+  public static File srgZip() {
+    return new File(directory(), "srg.zip");
+  }
+
+  public static File mcpZip() {
+    return new File(directory(), "mcp.zip");
+  }
+
+  public static File intermediaryJar() {
+    return new File(directory(), "intermediary.jar");
+  }
+
+  /**
+   * Reads an entry of an archive into memory, so benchmarks do not measure decompression.
+   */
+  public static byte[] read(File archive, String name) {
+    try (ZipFile zip = new ZipFile(archive)) {
+      @Nullable ZipEntry entry = zip.getEntry(name);
+      if (entry == null) {
+        throw new IOException("Missing entry \"" + name + "\" in " + archive);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (InputStream in = zip.getInputStream(entry)) {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      }
+      return out.toByteArray();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny;
+
+import com.github.liachmodded.mcptiny.model.CompactMcpTree;
+import com.github.liachmodded.mcptiny.model.McpTree;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+
+/**
+ * Measures the retained heap of a loaded {@link McpTree}, and of its {@link CompactMcpTree}, on
+ * synthetic inputs at several scales, to check memory scaling and catch regressions.
+ *
+ * <p>The retained size is the used heap after full collections with the tree reachable, minus the used
+ * heap before loading. Run it with a heap large enough for the largest scale.</p>
+ *
+ * <p>Usage: {@code HeapFootprint <work directory> [scale...]}</p>
+ */
+public final class HeapFootprint {
+
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+  private HeapFootprint() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      throw new IllegalArgumentException("Usage: HeapFootprint <work directory> [scale...]");
+    }
+    File work = new File(args[0]);
+    String[] scales = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : new String[] {"1"};
+
+    System.out.printf("%8s %8s %9s %9s %9s %12s %12s %10s%n", "scale", "classes", "fields", "methods", "params", "tree (KiB)",
+        "compact (KiB)", "bytes/entry");
+    for (String scale : scales) {
+      File directory = new File(work, "scale-" + scale);
+      SyntheticMappings.generate(directory, Double.parseDouble(scale), 42);
+
+      long base = usedHeap();
+      McpTree tree = MappingGenerator.buildTree(new File(directory, "srg.zip"), new File(directory, "mcp.zip"),
+          new File(directory, "intermediary.jar"));
+      long treeSize = usedHeap() - base;
+      CompactMcpTree compact = CompactMcpTree.of(tree);
+      tree = null; // only the compact tree stays reachable now
+      long compactSize = usedHeap() - base;
+
+      long entries = compact.getClassCount() + compact.getFieldCount() + compact.getMethodCount() + compact.getParameterCount();
+      System.out.printf("%8s %8d %9d %9d %9d %12d %12d %10d%n", scale, compact.getClassCount(), compact.getFieldCount(),
+          compact.getMethodCount(), compact.getParameterCount(), treeSize / 1024, compactSize / 1024, treeSize / Math.max(1, entries));
+    }
+  }
+
+  private static long usedHeap() {
+    // a few rounds, as one collection may not clear everything that is unreachable
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+    }
+    return MEMORY.getHeapMemoryUsage().getUsed();
+  }
+}
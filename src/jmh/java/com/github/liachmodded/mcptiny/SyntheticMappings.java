@@ -0,0 +1,289 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a consistent, synthetic set of the inputs the plugin resolves, for benchmarks and memory
+ * measurements without the real Forge and Fabric artifacts.
+ *
+ * <p>At scale 1 the set is about as large as the mappings of a current Minecraft version, with around
+ * 8000 classes. The output only depends on the scale and the seed. Like real inputs, it contains shared
+ * (inherited) methods, inner classes, constructors, quoted csv descriptions, and a few entries that do
+ * not match anything.</p>
+ *
+ * <p>Usage: {@code SyntheticMappings <output directory> [scale] [seed]}</p>
+ */
+public final class SyntheticMappings {
+
+  private static final int CLASSES_PER_SCALE = 8000;
+  private static final String[] PRIMITIVES = {"I", "Z", "J", "D", "F", "B", "C", "S"};
+  private static final String[] METHOD_DOCS = {"", "Simple desc", "Has, comma", "quote \"x\"", "multi\nline\tand\\back", "unicode \u00e9\u4e2d"};
+  private static final String[] FIELD_DOCS = {"", "field doc", "Has, comma"};
+
+  private final Random random;
+  private final List<String[]> classes = new ArrayList<>(); // obf, srg
+  private final StringBuilder tsrg = new StringBuilder();
+  private final StringBuilder intermediary = new StringBuilder("tiny\t2\t0\tofficial\tintermediary\n");
+  private final List<String> fields = new ArrayList<>();
+  private final List<String> methods = new ArrayList<>();
+  private final List<Integer> methodParams = new ArrayList<>();
+  private final List<String[]> shared = new ArrayList<>(); // obf, obf desc, srg
+  private final List<Integer> constructorIds = new ArrayList<>();
+  private final List<Integer> constructorParams = new ArrayList<>();
+  private final StringBuilder constructors = new StringBuilder();
+
+  private SyntheticMappings(long seed) {
+    this.random = new Random(seed);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      throw new IllegalArgumentException("Usage: SyntheticMappings <output directory> [scale] [seed]");
+    }
+    double scale = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+    generate(new File(args[0]), scale, seed);
+  }
+
+  /**
+   * Writes {@code srg.zip}, {@code mcp.zip} and {@code intermediary.jar} into a directory.
+   *
+   * @param directory the output directory
+   * @param scale the size relative to a current Minecraft version, like 0.1 or 10
+   * @param seed the random seed
+   */
+  public static void generate(File directory, double scale, long seed) throws IOException {
+    SyntheticMappings mappings = new SyntheticMappings(seed);
+    mappings.build(Math.max(1, (int) (CLASSES_PER_SCALE * scale)));
+    Files.createDirectories(directory.toPath());
+    mappings.write(directory);
+  }
+
+  private void build(int classCount) {
+    for (int i = 0; i < classCount; i++) {
+      classes.add(new String[] {obfName(i), "net/minecraft/pkg" + (i % 40) + "/Cls" + i});
+    }
+    for (int i = 0; i < classCount; i += 5) {
+      String[] outer = classes.get(i);
+      classes.add(new String[] {outer[0] + "$" + obfName(i % 3), outer[1] + "$Inner" + i});
+    }
+
+    int fieldId = 1000;
+    int methodId = 1000;
+    for (int c = 0; c < classes.size(); c++) {
+      String[] owner = classes.get(c);
+      tsrg.append(owner[0]).append(' ').append(owner[1]).append('\n');
+      intermediary.append("c\t").append(owner[0]).append("\tnet/minecraft/class_").append(c + 1).append('\n');
+
+      int fieldCount = random.nextInt(9);
+      int methodCount = random.nextInt(11);
+      for (int j = 0; j < fieldCount; j++) {
+        String obf = obfName(j);
+        String srg = "field_" + ++fieldId + "_" + obf;
+        tsrg.append('\t').append(obf).append(' ').append(srg).append('\n');
+        intermediary.append("\tf\t").append(type(0)).append('\t').append(obf).append("\tfield_").append(fieldId).append('\n');
+        fields.add(srg);
+      }
+
+      Set<String> used = new HashSet<>();
+      for (int j = 0; j < methodCount; j++) {
+        int paramCount = random.nextInt(4);
+        StringBuilder desc = new StringBuilder("(");
+        for (int k = 0; k < paramCount; k++) {
+          desc.append(type(0));
+        }
+        desc.append(')').append(random.nextBoolean() ? type(0) : "V");
+
+        String obf;
+        String obfDesc;
+        String srg;
+        if (!shared.isEmpty() && random.nextDouble() < 0.1) { // inherited from a supertype
+          String[] method = shared.get(random.nextInt(shared.size()));
+          obf = method[0];
+          obfDesc = method[1];
+          srg = method[2];
+        } else {
+          obf = obfName(j + fieldCount);
+          obfDesc = desc.toString();
+          srg = "func_" + ++methodId + "_" + obfName(j);
+          if (used.contains(obf + obfDesc)) {
+            continue;
+          }
+          // only methods that are actually emitted can be inherited
+          if (random.nextDouble() < 0.1) {
+            shared.add(new String[] {obf, obfDesc, srg});
+          }
+          methods.add(srg);
+          methodParams.add(paramCount);
+        }
+        if (!used.add(obf + obfDesc)) {
+          continue;
+        }
+        tsrg.append('\t').append(obf).append(' ').append(obfDesc).append(' ').append(srg).append('\n');
+        intermediary.append("\tm\t").append(obfDesc).append('\t').append(obf).append("\tmethod_").append(srg, 5, srg.indexOf('_', 5))
+            .append('\n');
+      }
+      if (random.nextDouble() < 0.05) {
+        tsrg.append("\tequals ()V equals\n");
+      }
+    }
+
+    int constructorId = 5000;
+    for (int c = 0; c < classCount; c += 3) {
+      int paramCount = random.nextInt(4);
+      StringBuilder desc = new StringBuilder("(");
+      for (int k = 0; k < paramCount; k++) {
+        desc.append(type(1));
+      }
+      constructors.append(++constructorId).append(' ').append(classes.get(c)[1]).append(' ').append(desc).append(")V\n");
+      constructorIds.add(constructorId);
+      constructorParams.add(paramCount);
+    }
+    // an anonymous class only known through its constructor, and a class that does not exist
+    constructors.append(++constructorId).append(' ').append(classes.get(Math.min(1, classCount - 1))[1]).append("$Anon (I)V\n");
+    constructors.append(++constructorId).append(" net/minecraft/Missing (I)V\n");
+  }
+
+  // a random field or parameter type, in official (0) or srg (1) names
+  private String type(int namespace) {
+    double r = random.nextDouble();
+    if (r < 0.4) {
+      return PRIMITIVES[random.nextInt(PRIMITIVES.length)];
+    }
+    if (r < 0.5) {
+      return "Ljava/lang/String;";
+    }
+    return "L" + classes.get(random.nextInt(classes.size()))[namespace] + ";";
+  }
+
+  private void write(File directory) throws IOException {
+    StringBuilder staticMethods = new StringBuilder();
+    for (String method : methods) {
+      if (random.nextDouble() < 0.2) {
+        staticMethods.append(method).append('\n');
+      }
+    }
+
+    StringBuilder methodsCsv = new StringBuilder("searge,name,side,desc\r\n");
+    for (String method : methods) {
+      if (random.nextDouble() < 0.8) {
+        String doc = METHOD_DOCS[random.nextInt(METHOD_DOCS.length)];
+        methodsCsv.append(method).append(",name_").append(id(method)).append(',').append(random.nextInt(3)).append(',')
+            .append(csv(doc)).append("\r\n");
+      }
+    }
+    methodsCsv.append("func_1_a,missing,0,\r\n");
+
+    StringBuilder fieldsCsv = new StringBuilder("searge,name,side,desc\r\n");
+    for (String field : fields) {
+      if (random.nextDouble() < 0.8) {
+        String doc = FIELD_DOCS[random.nextInt(FIELD_DOCS.length)];
+        fieldsCsv.append(field).append(",fname_").append(id(field)).append(',').append(random.nextInt(3)).append(',')
+            .append(csv(doc)).append("\r\n");
+      }
+    }
+    fieldsCsv.append("field_1_a,missing,0,\r\n");
+
+    StringBuilder paramsCsv = new StringBuilder("param,name,side\r\n");
+    for (int i = 0; i < methods.size(); i++) {
+      for (int k = 1; k <= methodParams.get(i); k++) {
+        if (random.nextDouble() < 0.7) {
+          paramsCsv.append("p_").append(id(methods.get(i))).append('_').append(k).append("_,par").append(k).append(",0\r\n");
+        }
+      }
+    }
+    for (int i = 0; i < constructorIds.size(); i++) {
+      for (int k = 1; k <= constructorParams.get(i); k++) {
+        paramsCsv.append("p_i").append(constructorIds.get(i)).append('_').append(k).append("_,cpar").append(k).append(",0\r\n");
+      }
+    }
+    paramsCsv.append("p_77_1_,missing,0\r\n");
+
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(new File(directory, "srg.zip").toPath()))) {
+      put(zip, "config/joined.tsrg", tsrg);
+      put(zip, "config/constructors.txt", constructors);
+      put(zip, "config/static_methods.txt", staticMethods);
+    }
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(new File(directory, "mcp.zip").toPath()))) {
+      put(zip, "methods.csv", methodsCsv);
+      put(zip, "fields.csv", fieldsCsv);
+      put(zip, "params.csv", paramsCsv);
+    }
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(new File(directory, "intermediary.jar").toPath()))) {
+      put(zip, "mappings/mappings.tiny", intermediary);
+    }
+  }
+
+  private static void put(ZipOutputStream zip, String name, CharSequence content) {
+    try {
+      zip.putNextEntry(new ZipEntry(name));
+      Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+      writer.append(content);
+      writer.flush();
+      zip.closeEntry();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  // the number in an srg name, like 1001 in func_1001_a
+  private static String id(String srg) {
+    int start = srg.indexOf('_') + 1;
+    return srg.substring(start, srg.indexOf('_', start));
+  }
+
+  private static String csv(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  // a, b, ..., z, aa, ab, ...
+  private static String obfName(int index) {
+    StringBuilder ret = new StringBuilder();
+    for (int i = index + 1; i > 0; i = (i - 1) / 26) {
+      ret.append((char) ('a' + (i - 1) % 26));
+    }
+    return ret.reverse().toString();
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.serde;
+
+import com.github.liachmodded.mcptiny.Fixtures;
+import com.github.liachmodded.mcptiny.model.McpTree;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The individual loading stages, each reading its input from memory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LoaderBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Inputs {
+
+    byte[] tsrg;
+    byte[] constructors;
+    byte[] staticMethods;
+    byte[] methods;
+    byte[] fields;
+    byte[] params;
+    byte[] intermediary;
+
+    @Setup(Level.Trial)
+    public void read() {
+      File srgZip = Fixtures.srgZip();
+      File mcpZip = Fixtures.mcpZip();
+      tsrg = Fixtures.read(srgZip, "config/joined.tsrg");
+      constructors = Fixtures.read(srgZip, "config/constructors.txt");
+      staticMethods = Fixtures.read(srgZip, "config/static_methods.txt");
+      methods = Fixtures.read(mcpZip, "methods.csv");
+      fields = Fixtures.read(mcpZip, "fields.csv");
+      params = Fixtures.read(mcpZip, "params.csv");
+      intermediary = Fixtures.read(Fixtures.intermediaryJar(), "mappings/mappings.tiny");
+    }
+
+    McpTree loadSrg() {
+      McpTree tree = new McpTree();
+      TsrgLoader.loadTsrg(tree, new ByteArrayInputStream(tsrg));
+      TsrgLoader.loadConstructorsSrg(tree, new ByteArrayInputStream(constructors));
+      TsrgLoader.loadStaticMethods(tree, new ByteArrayInputStream(staticMethods));
+      return tree;
+    }
+  }
+
+  /**
+   * A tree with srg names only, rebuilt for every invocation as merging intermediary names changes it.
+   */
+  @State(Scope.Thread)
+  public static class SrgTree {
+
+    McpTree tree;
+
+    @Setup(Level.Invocation)
+    public void load(Inputs inputs) {
+      tree = inputs.loadSrg();
+    }
+  }
+
+  /**
+   * A tree with srg and intermediary names. Applying csvs to it again only overwrites the same names.
+   */
+  @State(Scope.Thread)
+  public static class MergedTree {
+
+    McpTree tree;
+
+    @Setup(Level.Trial)
+    public void load(Inputs inputs) {
+      tree = inputs.loadSrg();
+      IntermediaryWorker.addIntermediaryAndFixFieldDesc(tree, new ByteArrayInputStream(inputs.intermediary));
+    }
+  }
+
+  @Benchmark
+  public McpTree loadTsrg(Inputs inputs) {
+    McpTree tree = new McpTree();
+    TsrgLoader.loadTsrg(tree, new ByteArrayInputStream(inputs.tsrg));
+    return tree;
+  }
+
+  @Benchmark
+  public McpTree loadSrgZip(Inputs inputs) {
+    return inputs.loadSrg();
+  }
+
+  @Benchmark
+  public McpTree addIntermediary(Inputs inputs, SrgTree srg) {
+    IntermediaryWorker.addIntermediaryAndFixFieldDesc(srg.tree, new ByteArrayInputStream(inputs.intermediary));
+    return srg.tree;
+  }
+
+  @Benchmark
+  public List<McpNameEntry> readMethodsCsv(Inputs inputs) {
+    return TsrgLoader.readMcpCsv(new ByteArrayInputStream(inputs.methods), true);
+  }
+
+  @Benchmark
+  public List<McpNameEntry> readParamsCsv(Inputs inputs) {
+    return TsrgLoader.readMcpCsv(new ByteArrayInputStream(inputs.params), false);
+  }
+
+  @Benchmark
+  public MissReport loadMethodsMcp(Inputs inputs, MergedTree merged) {
+    return TsrgLoader.loadMethodsMcp(merged.tree, new ByteArrayInputStream(inputs.methods));
+  }
+
+  @Benchmark
+  public MissReport loadFieldsMcp(Inputs inputs, MergedTree merged) {
+    return TsrgLoader.loadFieldsMcp(merged.tree, new ByteArrayInputStream(inputs.fields));
+  }
+
+  @Benchmark
+  public MissReport loadParamsMcp(Inputs inputs, MergedTree merged) {
+    return TsrgLoader.loadParamsMcp(merged.tree, new ByteArrayInputStream(inputs.params));
+  }
+}
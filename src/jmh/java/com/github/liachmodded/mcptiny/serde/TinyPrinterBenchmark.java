@@ -0,0 +1,94 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.serde;
+
+import com.github.liachmodded.mcptiny.Fixtures;
+import com.github.liachmodded.mcptiny.PipelineBenchmark.BlackholeOutputStream;
+import com.github.liachmodded.mcptiny.model.CompactMcpTree;
+import com.github.liachmodded.mcptiny.model.McpTree;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Printing a fully loaded tree, from both tree representations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TinyPrinterBenchmark {
+
+  private static final List<String> NAMESPACES = Arrays.asList("intermediary", "named");
+
+  private McpTree tree;
+  private CompactMcpTree compact;
+
+  @Setup(Level.Trial)
+  public void load() {
+    tree = loadTree();
+    compact = CompactMcpTree.of(loadTree()); // compaction empties its source
+  }
+
+  private static McpTree loadTree() {
+    McpTree tree = new McpTree();
+    TsrgLoader.loadTsrg(tree, new ByteArrayInputStream(Fixtures.read(Fixtures.srgZip(), "config/joined.tsrg")));
+    TsrgLoader.loadConstructorsSrg(tree, new ByteArrayInputStream(Fixtures.read(Fixtures.srgZip(), "config/constructors.txt")));
+    IntermediaryWorker.addIntermediaryAndFixFieldDesc(tree,
+        new ByteArrayInputStream(Fixtures.read(Fixtures.intermediaryJar(), "mappings/mappings.tiny")));
+    TsrgLoader.loadMethodsMcp(tree, new ByteArrayInputStream(Fixtures.read(Fixtures.mcpZip(), "methods.csv")));
+    TsrgLoader.loadFieldsMcp(tree, new ByteArrayInputStream(Fixtures.read(Fixtures.mcpZip(), "fields.csv")));
+    TsrgLoader.loadParamsMcp(tree, new ByteArrayInputStream(Fixtures.read(Fixtures.mcpZip(), "params.csv")));
+    return tree.freeze();
+  }
+
+  @Benchmark
+  public void printTree(Blackhole blackhole) throws IOException {
+    TinyPrinter.print(new BlackholeOutputStream(blackhole), tree, NAMESPACES);
+  }
+
+  @Benchmark
+  public void printCompactTree(Blackhole blackhole) throws IOException {
+    TinyPrinter.print(new BlackholeOutputStream(blackhole), compact, NAMESPACES);
+  }
+}
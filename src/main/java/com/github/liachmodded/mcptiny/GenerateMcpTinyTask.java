@@ -0,0 +1,217 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Generates a tiny v2 mapping jar for one pair of Minecraft and MCP versions.
+ *
+ * <p>Everything the action needs is captured into task properties at configuration time, so the task
+ * never reaches back into the {@link Project} while executing.</p>
+ */
+@CacheableTask
+public class GenerateMcpTinyTask extends DefaultTask {
+
+  private final Property<String> mcVersion;
+  private final Property<String> mcpVersion;
+  private final ConfigurableFileCollection srgZip;
+  private final ConfigurableFileCollection mcpZip;
+  private final ConfigurableFileCollection intermediaryJar;
+  private final Property<String> entryCompression;
+  private final Property<Integer> compressionLevel;
+  private final DirectoryProperty gradleUserHome;
+  private final RegularFileProperty outputJar;
+  private final RegularFileProperty reportFile;
+  private volatile boolean generated; // the output is current for this build
+
+  public GenerateMcpTinyTask() {
+    Project project = getProject();
+    ObjectFactory objects = project.getObjects();
+    this.mcVersion = objects.property(String.class);
+    this.mcpVersion = objects.property(String.class);
+    this.srgZip = project.files();
+    this.mcpZip = project.files();
+    this.intermediaryJar = project.files();
+    this.entryCompression = objects.property(String.class);
+    this.compressionLevel = objects.property(Integer.class);
+    this.gradleUserHome = objects.directoryProperty();
+    this.gradleUserHome.set(project.getGradle().getGradleUserHomeDir());
+    this.outputJar = objects.fileProperty();
+    this.reportFile = objects.fileProperty();
+  }
+
+  @Input
+  public Property<String> getMcVersion() {
+    return mcVersion;
+  }
+
+  @Input
+  public Property<String> getMcpVersion() {
+    return mcpVersion;
+  }
+
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  public ConfigurableFileCollection getSrgZip() {
+    return srgZip;
+  }
+
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  public ConfigurableFileCollection getMcpZip() {
+    return mcpZip;
+  }
+
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  public ConfigurableFileCollection getIntermediaryJar() {
+    return intermediaryJar;
+  }
+
+  /**
+   * Gets the compression method of the mappings entry, either {@code STORED} or {@code DEFLATED}.
+   */
+  @Input
+  public Property<String> getEntryCompression() {
+    return entryCompression;
+  }
+
+  /**
+   * Gets the deflater level of the mappings entry, ignored for stored entries.
+   */
+  @Input
+  public Property<Integer> getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  @Internal
+  public DirectoryProperty getGradleUserHome() {
+    return gradleUserHome;
+  }
+
+  @OutputFile
+  public RegularFileProperty getOutputJar() {
+    return outputJar;
+  }
+
+  /**
+   * Gets the json file receiving the per-phase timings and counters of the last run.
+   */
+  @OutputFile
+  public RegularFileProperty getReportFile() {
+    return reportFile;
+  }
+
+  /**
+   * Generates the jar, sharing a generation of the same jar that is already running in the build, like
+   * one for a dependency resolution that runs the action directly.
+   */
+  @TaskAction
+  public void generate() {
+    if (generated && outputJar.get().getAsFile().isFile()) {
+      return; // already generated for a direct resolution of the dependency
+    }
+    SharedMappingService.generate(outputJar.get().getAsFile(), this::generateNow);
+  }
+
+  /**
+   * Generates the jar for a direct resolution of the dependency, unless it is current. Gradle's
+   * up-to-date checks do not apply outside of task execution, so the versions, settings and input files
+   * are compared with a stamp left by the last generation instead.
+   */
+  void generateIfStale() {
+    File output = outputJar.get().getAsFile();
+    if (generated && output.isFile()) {
+      return;
+    }
+    Path stampFile = getStampFile();
+    String stamp = stamp(srgZip.getSingleFile(), mcpZip.getSingleFile(), intermediaryJar.getSingleFile());
+    try {
+      if (output.isFile() && Files.isRegularFile(stampFile)
+          && stamp.equals(new String(Files.readAllBytes(stampFile), StandardCharsets.UTF_8))) {
+        generated = true;
+        return;
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    generate();
+  }
+
+  private void generateNow() {
+    GenerationReport report = new GenerationReport();
+    // Gradle resolves input files while fingerprinting them before the action, so this only includes
+    // downloads when the dependency is resolved directly
+    File[] inputs = report.timed("locate inputs", () -> new File[] {
+        srgZip.getSingleFile(), mcpZip.getSingleFile(), intermediaryJar.getSingleFile()}).get();
+    MappingGenerator.generate(gradleUserHome.get().getAsFile(), mcVersion.get(), mcpVersion.get(), inputs[0], inputs[1],
+        inputs[2], entryCompression.get(), compressionLevel.get(), outputJar.get().getAsFile(),
+        reportFile.get().getAsFile(), report);
+    try {
+      Files.write(getStampFile(), stamp(inputs).getBytes(StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    generated = true;
+  }
+
+  private Path getStampFile() {
+    return getTemporaryDir().toPath().resolve("inputs.stamp");
+  }
+
+  private String stamp(File... inputs) {
+    StringBuilder ret = new StringBuilder();
+    ret.append(mcVersion.get()).append('\n').append(mcpVersion.get()).append('\n')
+        .append(entryCompression.get()).append('\n').append(compressionLevel.get()).append('\n');
+    for (File input : inputs) {
+      ret.append(input.getAbsolutePath()).append('\n').append(input.length()).append('\n')
+          .append(input.lastModified()).append('\n');
+    }
+    return ret.toString();
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny;
+
+import com.sun.management.ThreadMXBean;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Records the wall time and allocated bytes of each phase of a mapping generation, along with entity
+ * counts, and writes them as a json report.
+ *
+ * <p>Allocations are measured per thread with the HotSpot {@code ThreadMXBean} extension, so each phase
+ * only counts what its own thread allocated. Where that is unsupported, allocations are reported as -1.
+ * Phases may be recorded from several threads at once.</p>
+ */
+final class GenerationReport {
+
+  static final int FORMAT_VERSION = 1;
+  private static final @Nullable ThreadMXBean ALLOCATIONS = allocationBean();
+
+  private final long startNanos = System.nanoTime();
+  private final Map<String, Object> properties = new LinkedHashMap<>();
+  private final List<PhaseTiming> phases = new ArrayList<>();
+  private final Map<String, Long> counts = new LinkedHashMap<>();
+
+  private static @Nullable ThreadMXBean allocationBean() {
+    try {
+      java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      if (threads instanceof ThreadMXBean) {
+        ThreadMXBean ret = (ThreadMXBean) threads;
+        if (ret.isThreadAllocatedMemorySupported() && ret.isThreadAllocatedMemoryEnabled()) {
+          return ret;
+        }
+      }
+    } catch (LinkageError | UnsupportedOperationException ex) {
+      // not a HotSpot vm
+    }
+    return null;
+  }
+
+  private static long allocatedBytes() {
+    return ALLOCATIONS == null ? -1 : ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Runs a phase on the current thread and records it.
+   */
+  <T> T time(String name, Phase<T> phase) throws IOException {
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    try {
+      return phase.run();
+    } finally {
+      long end = System.nanoTime();
+      long allocatedAfter = allocatedBytes();
+      record(new PhaseTiming(name, Thread.currentThread().getName(), start - startNanos, end - start,
+          allocated < 0 ? -1 : allocatedAfter - allocated));
+    }
+  }
+
+  /**
+   * Wraps a phase that will run on another thread, like a task on a thread pool.
+   */
+  <T> Supplier<T> timed(String name, Supplier<T> phase) {
+    return () -> {
+      try {
+        return time(name, phase::get);
+      } catch (IOException ex) {
+        throw new AssertionError(ex); // suppliers do not throw checked exceptions
+      }
+    };
+  }
+
+  synchronized void put(String property, Object value) {
+    properties.put(property, value);
+  }
+
+  synchronized void count(String name, long value) {
+    counts.put(name, value);
+  }
+
+  private synchronized void record(PhaseTiming timing) {
+    phases.add(timing);
+  }
+
+  /**
+   * Writes this report as json, with the total time measured up to now.
+   */
+  synchronized void write(Path path) throws IOException {
+    Files.createDirectories(path.toAbsolutePath().getParent());
+    try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      writer.write(toJson());
+    }
+  }
+
+  synchronized String toJson() {
+    StringBuilder out = new StringBuilder("{\n");
+    out.append("  \"formatVersion\": ").append(FORMAT_VERSION).append(",\n");
+    for (Map.Entry<String, Object> property : properties.entrySet()) {
+      out.append("  ");
+      string(out, property.getKey()).append(": ");
+      value(out, property.getValue()).append(",\n");
+    }
+    out.append("  \"totalMillis\": ").append(millis(System.nanoTime() - startNanos)).append(",\n");
+    out.append("  \"phases\": [");
+    for (int i = 0; i < phases.size(); i++) {
+      PhaseTiming phase = phases.get(i);
+      out.append(i == 0 ? "\n" : ",\n").append("    {\"name\": ");
+      string(out, phase.name).append(", \"thread\": ");
+      string(out, phase.thread).append(", \"startMillis\": ").append(millis(phase.startNanos))
+          .append(", \"wallMillis\": ").append(millis(phase.wallNanos))
+          .append(", \"allocatedBytes\": ").append(phase.allocatedBytes).append('}');
+    }
+    out.append(phases.isEmpty() ? "],\n" : "\n  ],\n");
+    out.append("  \"counts\": {");
+    boolean first = true;
+    for (Map.Entry<String, Long> count : counts.entrySet()) {
+      out.append(first ? "\n    " : ",\n    ");
+      string(out, count.getKey()).append(": ").append(count.getValue());
+      first = false;
+    }
+    out.append(counts.isEmpty() ? "}\n" : "\n  }\n");
+    return out.append("}\n").toString();
+  }
+
+  /**
+   * Summarizes this report in a few lines, for the build log.
+   */
+  synchronized String summary() {
+    StringBuilder out = new StringBuilder("mcptiny generation took ").append(millis(System.nanoTime() - startNanos))
+        .append(" ms");
+    for (Map.Entry<String, Object> property : properties.entrySet()) {
+      out.append(", ").append(property.getKey()).append(' ').append(property.getValue());
+    }
+    for (PhaseTiming phase : phases) {
+      out.append("\n  ").append(phase.name).append(": ").append(millis(phase.wallNanos)).append(" ms");
+      if (phase.allocatedBytes >= 0) {
+        out.append(", ").append(phase.allocatedBytes / (1024 * 1024)).append(" MiB allocated");
+      }
+    }
+    if (!counts.isEmpty()) {
+      out.append("\n  counts: ").append(counts);
+    }
+    return out.toString();
+  }
+
+  private static String millis(long nanos) {
+    return String.valueOf(nanos / 1_000_000.0);
+  }
+
+  private static StringBuilder value(StringBuilder out, Object value) {
+    if (value instanceof Number || value instanceof Boolean) {
+      return out.append(value);
+    }
+    return string(out, String.valueOf(value));
+  }
+
+  private static StringBuilder string(StringBuilder out, String value) {
+    out.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.append(String.format("\\u%04x", (int) c));
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    return out.append('"');
+  }
+
+  @FunctionalInterface
+  interface Phase<T> {
+
+    T run() throws IOException;
+  }
+
+  private static final class PhaseTiming {
+
+    final String name;
+    final String thread;
+    final long startNanos;
+    final long wallNanos;
+    final long allocatedBytes;
+
+    PhaseTiming(String name, String thread, long startNanos, long wallNanos, long allocatedBytes) {
+      this.name = name;
+      this.thread = thread;
+      this.startNanos = startNanos;
+      this.wallNanos = wallNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+  }
+}
@@ -0,0 +1,406 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny;
+
+import com.github.liachmodded.mcptiny.jfr.CacheEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+/**
+ * A content-addressed cache of generated tiny jars and intermediate tree snapshots, shared by all builds
+ * using the same Gradle user home.
+ *
+ * <p>Each entry lives in its own directory named after the cache key. An entry is only visible once its
+ * file has been atomically moved into place, so readers never see a partial file. Users of the same key
+ * are serialized with an in-process lock and a file lock, so concurrent builds generate each entry once.
+ * Entries unused for {@link #MAX_UNUSED_DAYS} days are evicted at most once a day.</p>
+ */
+final class MappingCache {
+
+  /**
+   * Bump whenever the generated output changes for identical inputs.
+   */
+  static final int FORMAT_VERSION = 1;
+  private static final long MAX_UNUSED_DAYS = 30;
+  private static final long EVICTION_INTERVAL = TimeUnit.DAYS.toMillis(1);
+  private static final long TOUCH_INTERVAL = TimeUnit.HOURS.toMillis(1);
+  private static final long MIN_BACKOFF = 10;
+  private static final long MAX_BACKOFF = 500;
+  private static final String JAR_NAME = "mappings.jar";
+  private static final String LAST_USED = "last-used";
+  private static final String EVICTION_MARKER = "eviction.marker";
+  private static final ConcurrentMap<Path, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+  private static final Logger LOGGER = Logging.getLogger(MappingCache.class);
+
+  private final Path root;
+
+  MappingCache(File gradleUserHome) {
+    this.root = gradleUserHome.toPath().resolve("caches").resolve("mcptiny");
+  }
+
+  /**
+   * Computes a cache key from everything an entry is generated from, like versions, {@link #hash file
+   * hashes} and a description of how a jar is packed, as it changes the output bytes.
+   */
+  static String key(String... parts) {
+    MessageDigest digest = sha256();
+    update(digest, Integer.toString(FORMAT_VERSION));
+    for (String part : parts) {
+      update(digest, part);
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Gets the cached jar for a key, generating and publishing it first if it is absent.
+   *
+   * @param key the cache key
+   * @param generator writes a complete jar to the given path
+   * @return the path to the cached jar
+   */
+  Path get(String key, Generator generator) {
+    return get(key, JAR_NAME, generator);
+  }
+
+  /**
+   * Gets a cached file for a key, generating and publishing it first if it is absent.
+   *
+   * @param key the cache key
+   * @param fileName the name of the file in the entry of the key
+   * @param generator writes the complete file to the given path
+   * @return the path to the cached file
+   */
+  Path get(String key, String fileName, Generator generator) {
+    CacheEvent event = CacheEvent.begin();
+    Path entry = root.resolve(key);
+    Path file = entry.resolve(fileName);
+    boolean hit = true;
+    try {
+      // hits lock too: the marker is touched under the lock, so an evictor that already picked the
+      // entry sees it as used again and keeps the file the caller is about to read
+      try (Lock ignored = lock(entry)) {
+        if (!Files.isRegularFile(file)) {
+          hit = false;
+          publish(file, generator);
+        }
+        touch(entry);
+      }
+      event.commit(key, hit, Files.size(file));
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    try {
+      evictStale();
+    } catch (IOException | RuntimeException ex) {
+      LOGGER.debug("Failed to evict stale entries from {}", root, ex);
+    }
+    return file;
+  }
+
+  private void publish(Path file, Generator generator) throws IOException {
+    Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      generator.generate(tmp);
+      try {
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private void touch(Path entry) throws IOException {
+    Path marker = entry.resolve(LAST_USED);
+    long now = System.currentTimeMillis();
+    if (!Files.exists(marker) || now - Files.getLastModifiedTime(marker).toMillis() > TOUCH_INTERVAL) {
+      mark(marker, now);
+    }
+  }
+
+  /**
+   * Creates a marker file if absent and sets its modification time. Other builds may do the same at
+   * once, so this never fails because the marker already exists.
+   */
+  private static void mark(Path marker, long now) throws IOException {
+    Files.newOutputStream(marker, StandardOpenOption.CREATE, StandardOpenOption.WRITE).close();
+    Files.setLastModifiedTime(marker, FileTime.fromMillis(now));
+  }
+
+  private static long lastUsed(Path entry) throws IOException {
+    Path lastUsed = entry.resolve(LAST_USED);
+    // entries without a marker are left over from an interrupted generation
+    return Files.getLastModifiedTime(Files.exists(lastUsed) ? lastUsed : entry).toMillis();
+  }
+
+  private void evictStale() throws IOException {
+    Path marker = root.resolve(EVICTION_MARKER);
+    long now = System.currentTimeMillis();
+    if (Files.exists(marker) && now - Files.getLastModifiedTime(marker).toMillis() < EVICTION_INTERVAL) {
+      return;
+    }
+    mark(marker, now);
+
+    long cutoff = now - TimeUnit.DAYS.toMillis(MAX_UNUSED_DAYS);
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, Files::isDirectory)) {
+      for (Path entry : entries) {
+        try {
+          if (lastUsed(entry) >= cutoff) {
+            continue;
+          }
+          @Nullable Lock lock = tryLock(entry);
+          if (lock == null) {
+            continue; // in use by another build
+          }
+          try (Lock ignored = lock) {
+            // checked again, as a build may have used the entry before this got the lock
+            if (lastUsed(entry) < cutoff) {
+              // the lock file goes too; a build waiting on it notices in lock and starts over
+              deleteContents(entry);
+            }
+          }
+        } catch (IOException | RuntimeException ex) {
+          // best effort, another build may have started using the entry again
+          LOGGER.debug("Failed to evict {}", entry, ex);
+        }
+      }
+    }
+  }
+
+  private static void deleteContents(Path entry) throws IOException {
+    try (Stream<Path> walk = Files.walk(entry)) {
+      walk.sorted(Comparator.reverseOrder()).forEach(path -> {
+        try {
+          Files.deleteIfExists(path);
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+      });
+    }
+  }
+
+  private static Lock lock(Path entry) throws IOException {
+    ReentrantLock local = LOCKS.computeIfAbsent(entry, k -> new ReentrantLock());
+    local.lock();
+    try {
+      Path path = entry.resolve(Lock.FILE_NAME);
+      long backoff = MIN_BACKOFF;
+      while (true) {
+        Files.createDirectories(entry);
+        @Nullable Object identity = identity(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock fileLock;
+        try {
+          fileLock = channel.lock();
+        } catch (OverlappingFileLockException ex) {
+          // held by this class loaded in another class loader of this JVM, which waits on its own lock
+          channel.close();
+          sleep(backoff);
+          backoff = Math.min(backoff * 2, MAX_BACKOFF);
+          continue;
+        } catch (IOException | RuntimeException ex) {
+          channel.close();
+          throw ex;
+        }
+        Lock lock = new Lock(local, channel, fileLock);
+        if (identity != null && identity.equals(identity(path))) {
+          return lock;
+        }
+        // the lock file was created by this call, or evicted while waiting, so the lock may be on an
+        // unlinked file; start over on the file now at the path
+        lock.release();
+      }
+    } catch (IOException | RuntimeException ex) {
+      local.unlock();
+      throw ex;
+    }
+  }
+
+  private static @Nullable Lock tryLock(Path entry) throws IOException {
+    ReentrantLock local = LOCKS.computeIfAbsent(entry, k -> new ReentrantLock());
+    // an entry being generated on this thread may look up other entries, like a stage snapshot
+    if (local.isHeldByCurrentThread() || !local.tryLock()) {
+      return null;
+    }
+    @Nullable FileChannel channel = null;
+    try {
+      Path path = entry.resolve(Lock.FILE_NAME);
+      @Nullable Object identity = identity(path);
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      @Nullable FileLock fileLock;
+      try {
+        fileLock = channel.tryLock();
+      } catch (OverlappingFileLockException ex) {
+        fileLock = null; // held in another class loader of this JVM
+      }
+      if (fileLock == null || identity == null || !identity.equals(identity(path))) {
+        if (fileLock != null) {
+          fileLock.release();
+        }
+        channel.close();
+        local.unlock();
+        return null;
+      }
+      return new Lock(local, channel, fileLock);
+    } catch (IOException | RuntimeException ex) {
+      if (channel != null) {
+        channel.close();
+      }
+      local.unlock();
+      throw ex;
+    }
+  }
+
+  /**
+   * Identifies the file at a path, so a lock can tell whether its file was replaced while waiting.
+   * Falls back to mere existence when the file system has no file keys.
+   */
+  private static @Nullable Object identity(Path path) throws IOException {
+    try {
+      @Nullable Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+      return key != null ? key : Boolean.TRUE;
+    } catch (NoSuchFileException ex) {
+      return null;
+    }
+  }
+
+  private static void sleep(long millis) throws IOException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a cache entry lock");
+    }
+  }
+
+  /**
+   * Hashes the content of a file, for use in a {@link #key}.
+   */
+  static String hash(File file) {
+    MessageDigest digest = sha256();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return toHex(digest.digest());
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+      chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+    }
+    return new String(chars);
+  }
+
+  @FunctionalInterface
+  interface Generator {
+
+    void generate(Path target) throws IOException;
+  }
+
+  private static final class Lock implements AutoCloseable {
+
+    static final String FILE_NAME = "entry.lock";
+    private final ReentrantLock local;
+    private final FileChannel channel;
+    private final FileLock fileLock;
+
+    Lock(ReentrantLock local, FileChannel channel, FileLock fileLock) {
+      this.local = local;
+      this.channel = channel;
+      this.fileLock = fileLock;
+    }
+
+    /**
+     * Releases the file lock but keeps the in-process lock, for retrying on another file.
+     */
+    void release() throws IOException {
+      try {
+        fileLock.release();
+      } finally {
+        channel.close();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        release();
+      } finally {
+        local.unlock();
+      }
+    }
+  }
+}
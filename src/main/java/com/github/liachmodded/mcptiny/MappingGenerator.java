@@ -0,0 +1,297 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny;
+
+import com.github.liachmodded.mcptiny.model.CompactMcpTree;
+import com.github.liachmodded.mcptiny.model.McpTree;
+import com.github.liachmodded.mcptiny.model.McpTreeSnapshot;
+import com.github.liachmodded.mcptiny.serde.IntermediaryMappings;
+import com.github.liachmodded.mcptiny.serde.IntermediaryWorker;
+import com.github.liachmodded.mcptiny.serde.McpNameEntry;
+import com.github.liachmodded.mcptiny.serde.MissReport;
+import com.github.liachmodded.mcptiny.serde.TinyJarWriter;
+import com.github.liachmodded.mcptiny.serde.TsrgLoader;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import net.fabricmc.mapping.tree.TinyTree;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+/**
+ * Generates a tiny v2 mapping jar from srg, intermediary and mcp archives.
+ */
+final class MappingGenerator {
+
+  private static final Logger LOGGER = Logging.getLogger(MappingGenerator.class);
+  private static final String STAGE_SNAPSHOT = "stage.snapshot";
+
+  private MappingGenerator() {}
+
+  /**
+   * Generates a mapping jar, or copies it from the cache in the Gradle user home, then writes the
+   * generation report.
+   *
+   * <p>This must not touch any {@code Project} state, as it runs at execution time.</p>
+   */
+  static void generate(File gradleUserHome, String mcVersion, String mcpVersion, File srgZip, File mcpZip, File intJar,
+      String entryCompression, int compressionLevel, File output, File reportFile, GenerationReport report) {
+    int method = parseEntryCompression(entryCompression);
+    MappingCache cache = new MappingCache(gradleUserHome);
+    String srgHash = MappingCache.hash(srgZip);
+    String intHash = MappingCache.hash(intJar);
+    String key = MappingCache.key(mcVersion, mcpVersion, srgHash, MappingCache.hash(mcpZip), intHash,
+        method + ":" + compressionLevel);
+    // the srg and intermediary stage only changes with the minecraft version, unlike the daily mcp snapshots
+    String stageKey = MappingCache.key(mcVersion, "stage", srgHash, intHash,
+        Integer.toString(McpTreeSnapshot.FORMAT_VERSION));
+    report.put("minecraftVersion", mcVersion);
+    report.put("mcpVersion", mcpVersion);
+    report.put("cacheHit", true);
+
+    Path cached = cache.get(key, target -> {
+      report.put("cacheHit", false);
+      CompactMcpTree tree = buildCompactTree(mcpZip, report, () -> loadStage(cache, stageKey, srgZip, intJar, report));
+      report.count("classes", tree.getClassCount());
+      report.count("fields", tree.getFieldCount());
+      report.count("methods", tree.getMethodCount());
+      report.count("params", tree.getParameterCount());
+      report.time("pack", () -> {
+        packTiny(tree, target.toFile(), method, compressionLevel);
+        return null;
+      });
+    });
+
+    try {
+      report.time("copy", () -> {
+        Files.createDirectories(output.toPath().getParent());
+        return Files.copy(cached, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      });
+      report.write(reportFile.toPath());
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+
+    if (LOGGER.isInfoEnabled()) {
+      LOGGER.info(report.summary());
+    }
+    LOGGER.lifecycle("Tiny jar built, ready at \"{}\".", output);
+  }
+
+  private static int parseEntryCompression(String entryCompression) {
+    switch (entryCompression) {
+      case "STORED":
+        return ZipEntry.STORED;
+      case "DEFLATED":
+        return ZipEntry.DEFLATED;
+    }
+    throw new IllegalArgumentException("Unknown entry compression \"" + entryCompression + "\", expected STORED or DEFLATED");
+  }
+
+  // compaction empties the loaded tree, so its classes are collected while they are copied
+  private static CompactMcpTree buildCompactTree(File mcpZip, GenerationReport report, StageLoader stage)
+      throws IOException {
+    McpTree tree = buildTree(mcpZip, report, stage);
+    return report.time("compact", () -> CompactMcpTree.of(tree));
+  }
+
+  /**
+   * Gets the srg and intermediary stage from its snapshot in the cache, or builds it and stores its
+   * snapshot first.
+   */
+  private static McpTree loadStage(MappingCache cache, String stageKey, File srgZip, File intJar, GenerationReport report)
+      throws IOException {
+    AtomicReference<McpTree> built = new AtomicReference<>();
+    Path snapshot = cache.get(stageKey, STAGE_SNAPSHOT, target -> {
+      McpTree tree = buildStage(srgZip, intJar, report);
+      report.time("write stage snapshot", () -> {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+          McpTreeSnapshot.write(tree, out);
+        }
+        return null;
+      });
+      built.set(tree);
+    });
+    @Nullable McpTree tree = built.get();
+    report.put("stageCacheHit", tree == null);
+    return tree != null ? tree : report.time("read stage snapshot", () -> McpTreeSnapshot.read(snapshot));
+  }
+
+  static McpTree buildTree(File srgZip, File mcpZip, File intJar) throws IOException {
+    return buildTree(srgZip, mcpZip, intJar, new GenerationReport());
+  }
+
+  /**
+   * Loads and merges all inputs into a tree.
+   *
+   * <p>Loading is staged: the intermediary file and the csv files do not depend on the tree, so they are
+   * parsed on the common fork join pool while joined.tsrg loads. The intermediary names are merged
+   * next, as they may add or drop classes. The csv files each touch a disjoint part of the tree (method
+   * names, field names, parameters), so they are applied concurrently, and the result is the same as a
+   * serial load. The tree is frozen before it is returned.</p>
+   */
+  static McpTree buildTree(File srgZip, File mcpZip, File intJar, GenerationReport report) throws IOException {
+    return buildTree(mcpZip, report, () -> buildStage(srgZip, intJar, report));
+  }
+
+  /**
+   * Applies the mcp names to a tree of the srg and intermediary stage, reading the csv files while the
+   * stage loads.
+   */
+  private static McpTree buildTree(File mcpZip, GenerationReport report, StageLoader stage) throws IOException {
+    CompletableFuture<List<McpNameEntry>> methods = CompletableFuture.supplyAsync(report.timed("read methods.csv",
+        () -> readEntry(mcpZip, "methods.csv", in -> TsrgLoader.readMcpCsv(in, true))));
+    CompletableFuture<List<McpNameEntry>> fields = CompletableFuture.supplyAsync(report.timed("read fields.csv",
+        () -> readEntry(mcpZip, "fields.csv", in -> TsrgLoader.readMcpCsv(in, true))));
+    CompletableFuture<List<McpNameEntry>> params = CompletableFuture.supplyAsync(report.timed("read params.csv",
+        () -> readEntry(mcpZip, "params.csv", in -> TsrgLoader.readMcpCsv(in, false))));
+
+    McpTree tree = stage.load();
+    CompletableFuture<MissReport> methodsApplied = methods.thenApplyAsync(entries -> report.timed("apply methods.csv",
+        () -> TsrgLoader.applyMethodsMcp(tree, entries)).get());
+    CompletableFuture<MissReport> fieldsApplied = fields.thenApplyAsync(entries -> report.timed("apply fields.csv",
+        () -> TsrgLoader.applyFieldsMcp(tree, entries)).get());
+    List<McpNameEntry> paramEntries = join(params);
+    count(report, "missedParams", report.time("apply params.csv", () -> TsrgLoader.applyParamsMcp(tree, paramEntries)));
+    count(report, "missedMethods", join(methodsApplied));
+    count(report, "missedFields", join(fieldsApplied));
+    report.count("syntheticInnerClasses", tree.getSyntheticClassCount());
+    report.count("stringPoolSize", tree.getStringPool().size());
+    report.count("stringPoolHits", tree.getStringPool().getHits());
+    return tree.freeze();
+  }
+
+  /**
+   * Loads joined.tsrg, constructors.txt and static_methods.txt, then merges the intermediary names, while
+   * the intermediary file is read concurrently. The tree is left mutable for the mcp names.
+   */
+  private static McpTree buildStage(File srgZip, File intJar, GenerationReport report) throws IOException {
+    CompletableFuture<IntermediaryMappings> intermediary = CompletableFuture.supplyAsync(report.timed("read intermediary",
+        () -> readEntry(intJar, "mappings/mappings.tiny", IntermediaryWorker::readIntermediary)));
+    McpTree tree = handleSrgZip(srgZip, report);
+    IntermediaryMappings intermediaryMappings = join(intermediary);
+    report.time("merge intermediary", () -> {
+      IntermediaryWorker.addIntermediaryAndFixFieldDesc(tree, intermediaryMappings);
+      return null;
+    });
+    return tree;
+  }
+
+  private static void count(GenerationReport report, String name, MissReport misses) {
+    report.count(name, misses.getCount());
+    // some entries of every snapshot are for members that no longer exist, so this is no warning
+    if (misses.getCount() != 0) {
+      LOGGER.info("{}", misses);
+    }
+  }
+
+  private static <T> T readEntry(File file, String name, Function<InputStream, T> reader) {
+    try (ZipFile zip = new ZipFile(file); InputStream in = openEntry(zip, name)) {
+      return reader.apply(in);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ex;
+    }
+  }
+
+  private static McpTree handleSrgZip(File srgZip, GenerationReport report) throws IOException {
+    McpTree mcpTree = new McpTree();
+
+    try (ZipFile zip = new ZipFile(srgZip)) {
+      report.time("load joined.tsrg", () -> {
+        try (InputStream tsrg = openEntry(zip, "config/joined.tsrg")) {
+          TsrgLoader.loadTsrg(mcpTree, tsrg);
+        }
+        return null;
+      });
+      count(report, "missedConstructors", report.time("load constructors.txt", () -> {
+        try (InputStream constructorsTxt = openEntry(zip, "config/constructors.txt")) {
+          return TsrgLoader.loadConstructorsSrg(mcpTree, constructorsTxt);
+        }
+      }));
+      count(report, "missedStaticMethods", report.time("load static_methods.txt", () -> {
+        try (InputStream staticMethods = openEntry(zip, "config/static_methods.txt")) {
+          return TsrgLoader.loadStaticMethods(mcpTree, staticMethods);
+        }
+      }));
+    }
+
+    return mcpTree;
+  }
+
+  private static InputStream openEntry(ZipFile zip, String name) throws IOException {
+    @Nullable ZipEntry entry = zip.getEntry(name);
+    if (entry == null) {
+      throw new IOException("Missing entry \"" + name + "\" in " + zip.getName());
+    }
+    return zip.getInputStream(entry);
+  }
+
+  private static void packTiny(TinyTree tree, File target, int method, int level) throws IOException {
+    List<String> namespaces = Collections.unmodifiableList(Arrays.asList("intermediary", "named"));
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+      TinyJarWriter.write(out, tree, namespaces, method, level);
+    }
+  }
+
+  @FunctionalInterface
+  private interface StageLoader {
+
+    McpTree load() throws IOException;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny;
+
+import java.io.File;
+import java.util.Set;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
+import org.gradle.api.internal.artifacts.dependencies.DefaultSelfResolvingDependency;
+import org.gradle.api.internal.file.FileCollectionInternal;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+
+/**
+ * A dependency on the jar produced by a {@link GenerateMcpTinyTask}, identified with yarn-like coordinates.
+ */
+final class McpMappingDependency extends DefaultSelfResolvingDependency {
+
+  private final ModuleComponentIdentifier componentIdentifier;
+  private final FileCollectionInternal files;
+  private final TaskProvider<GenerateMcpTinyTask> task;
+
+  McpMappingDependency(ModuleComponentIdentifier componentIdentifier, FileCollectionInternal files,
+      TaskProvider<GenerateMcpTinyTask> task) {
+    super(componentIdentifier, files);
+    this.componentIdentifier = componentIdentifier;
+    this.files = files;
+    this.task = task;
+  }
+
+  static ModuleComponentIdentifier createIdentifier(String mcVersion, String mcpVersion) {
+    int t = mcpVersion.indexOf('-');
+    return new DefaultModuleComponentIdentifier(
+        DefaultModuleIdentifier.newId("de.oceanlabs.mcp", "mcp_snapshot"),
+        mcVersion + "+build." + (t < 0 ? mcpVersion : mcpVersion.substring(0, t))); // Yep fabric yarn build notation is weird
+  }
+
+  @Override
+  public String getGroup() {
+    return componentIdentifier.getGroup();
+  }
+
+  @Override
+  public String getName() {
+    return componentIdentifier.getModule();
+  }
+
+  @Override
+  public String getVersion() {
+    return componentIdentifier.getVersion();
+  }
+
+  @Override
+  public Set<File> resolve() {
+    // Loom resolves mapping dependencies directly instead of through a task graph
+    task.get().generateIfStale();
+    return super.resolve();
+  }
+
+  @Override
+  public McpMappingDependency copy() {
+    return new McpMappingDependency(componentIdentifier, files, task);
+  }
+}
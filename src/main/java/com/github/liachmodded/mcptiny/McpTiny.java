@@ -26,54 +26,51 @@
  */
 package com.github.liachmodded.mcptiny;
 
-import com.github.liachmodded.mcptiny.model.McpTree;
-import com.github.liachmodded.mcptiny.serde.IntermediaryWorker;
-import com.github.liachmodded.mcptiny.serde.TinyPrinter;
-import com.github.liachmodded.mcptiny.serde.TsrgLoader;
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.UncheckedIOException;
-import java.nio.file.Files;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ConfigurationContainer;
 import org.gradle.api.artifacts.Dependency;
-import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.artifacts.dsl.DependencyHandler;
 import org.gradle.api.artifacts.dsl.RepositoryHandler;
-import org.gradle.api.file.FileTree;
-import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
-import org.gradle.api.internal.artifacts.dependencies.DefaultSelfResolvingDependency;
 import org.gradle.api.internal.file.FileCollectionInternal;
-import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.api.tasks.TaskContainer;
+import org.gradle.api.tasks.TaskProvider;
 
 public class McpTiny implements Plugin<Project> {
 
+  static final String TASK_GROUP = "mcptiny";
+
   @Override
   public void apply(Project target) {
     target.getExtensions().create("mcptiny", McpTinyExtension.class, target, this);
   }
 
-  Dependency makeMapping(Project project, String mcVersion, String mcpVersion) {
-    RepositoryHandler repositories = project.getRepositories();
-    repositories.maven(repo -> {
-      repo.setName("forge");
-      repo.setUrl(project.uri("https://files.minecraftforge.net/maven/"));
-    });
-    repositories.maven(repo -> {
-      repo.setName("fabricintermediary");
-      repo.setUrl(project.uri("https://maven.fabricmc.net"));
+  Dependency makeMapping(Project project, McpTinyExtension extension, String mcVersion, String mcpVersion) {
+    // every requesting project gets the repositories, even when another project registered the task
+    addRepositories(project);
+    SharedMappingService service = SharedMappingService.get(project);
+    return service.getDependency(project, extension, mcVersion, mcpVersion, () -> {
+      Project owner = service.getOwner(project);
+      TaskProvider<GenerateMcpTinyTask> task = registerTask(service, project, extension, mcVersion, mcpVersion);
+      FileCollectionInternal files = (FileCollectionInternal) owner.files(task.flatMap(GenerateMcpTinyTask::getOutputJar)).builtBy(task);
+      return new McpMappingDependency(McpMappingDependency.createIdentifier(mcVersion, mcpVersion), files, task);
     });
+  }
+
+  /**
+   * Registers the task generating a version pair in the project owning the shared service, so all
+   * projects of a build depend on one task and one jar. The inputs are resolved with the repositories of
+   * the requesting project.
+   */
+  private TaskProvider<GenerateMcpTinyTask> registerTask(SharedMappingService service, Project project,
+      McpTinyExtension extension, String mcVersion, String mcpVersion) {
+    Project owner = service.getOwner(project);
+    String name = "generateMcpTiny-" + mcVersion + "-" + mcpVersion;
+    TaskContainer tasks = owner.getTasks();
+    if (tasks.getNames().contains(name)) {
+      return tasks.named(name, GenerateMcpTinyTask.class);
+    }
 
     String srgNotation = String.format("de.oceanlabs.mcp:mcp_config:%s-+@zip", mcVersion);
     String mcpNotation = String.format("de.oceanlabs.mcp:mcp_snapshot:%s@zip", mcpVersion);
@@ -84,121 +81,40 @@ public class McpTiny implements Plugin<Project> {
     Dependency mcpDep = dependencies.create(mcpNotation);
     Dependency intDep = dependencies.create(intNotation);
 
+    // detached configurations are only resolved once the task inputs are queried
     ConfigurationContainer configurations = project.getConfigurations();
     Configuration srgConfig = configurations.detachedConfiguration(srgDep);
     Configuration mcpConfig = configurations.detachedConfiguration(mcpDep);
     Configuration intConfig = configurations.detachedConfiguration(intDep);
 
-    File srgZip = srgConfig.getSingleFile();
-    File mcpZip = mcpConfig.getSingleFile();
-    File intJar = intConfig.getSingleFile();
-
-    // handle srg and mcp zips!
-    McpTree tree = handleSrgZip(project, srgZip);
-    applyIntermediary(project, tree, intJar);
-    handleMcpZip(project, tree, mcpZip);
-
-    File resultTinyJar = new File(project.getBuildDir(), "mcp-mappings-tiny-v2.jar");
-    packTiny(project, tree, resultTinyJar);
-
-    System.err.printf("Tiny jar built, ready at \"%s\".", resultTinyJar);
-
-    int t = mcpVersion.indexOf('-');
-    final ModuleComponentIdentifier moduleComponentIdentifier = new DefaultModuleComponentIdentifier(
-        DefaultModuleIdentifier.newId("de.oceanlabs.mcp", "mcp_snapshot"),
-        mcVersion + "+build." + (t < 0 ? mcpVersion : mcpVersion.substring(0, t))); // Yep fabric yarn build notation is weird
-    return new DefaultSelfResolvingDependency(moduleComponentIdentifier, (FileCollectionInternal) project.files(resultTinyJar)) {
-      @Override
-      public String getGroup() {
-        return moduleComponentIdentifier.getGroup();
-      }
-
-      @Override
-      public String getName() {
-        return moduleComponentIdentifier.getModule();
-      }
-
-      @Override
-      public String getVersion() {
-        return moduleComponentIdentifier.getVersion();
-      }
-
-      @Override
-      public Set<File> resolve() {
-        return super.resolve();
-      }
-    };
-  }
-
-  private McpTree handleSrgZip(Project project, File srgZip) {
-    FileTree fileTree = project.zipTree(srgZip);
-
-    McpTree mcpTree = new McpTree();
-
-    File tsrg = fileTree.matching(patternFilterable -> {
-      patternFilterable.include("config/joined.tsrg");
-    }).getSingleFile();
-    TsrgLoader.loadTsrg(mcpTree, tsrg);
-
-    File constructorsTxt = fileTree.matching(patternFilterable -> {
-      patternFilterable.include("config/constructors.txt");
-    }).getSingleFile();
-    TsrgLoader.loadConstructorsSrg(mcpTree, constructorsTxt);
-
-    File staticMethods = fileTree.matching(patternFilterable -> {
-      patternFilterable.include("config/static_methods.txt");
-    }).getSingleFile();
-    TsrgLoader.loadStaticMethods(mcpTree, staticMethods);
-
-    return mcpTree;
-  }
-
-  private void applyIntermediary(Project project, McpTree tree, File intJar) {
-    FileTree fileTree = project.zipTree(intJar);
-
-    File mappingsTiny = fileTree.matching(patternFilterable -> {
-      patternFilterable.include("mappings/mappings.tiny");
-    }).getSingleFile();
-
-    IntermediaryWorker.addIntermediaryAndFixFieldDesc(tree, mappingsTiny);
-  }
-
-  private void handleMcpZip(Project project, McpTree tree, File srgZip) {
-    FileTree fileTree = project.zipTree(srgZip);
-
-    File methodsCsv = fileTree.matching(patternFilterable -> {
-      patternFilterable.include("methods.csv");
-    }).getSingleFile();
-    TsrgLoader.loadMethodsMcp(tree, methodsCsv);
-
-    File fieldsCsv = fileTree.matching(patternFilterable -> {
-      patternFilterable.include("fields.csv");
-    }).getSingleFile();
-    TsrgLoader.loadFieldsMcp(tree, fieldsCsv);
-
-    File paramsCsv = fileTree.matching(patternFilterable -> {
-      patternFilterable.include("params.csv");
-    }).getSingleFile();
-    TsrgLoader.loadParamsMcp(tree, paramsCsv);
+    return tasks.register(name, GenerateMcpTinyTask.class, task -> {
+      task.setGroup(TASK_GROUP);
+      task.setDescription("Generates tiny v2 mappings for Minecraft " + mcVersion + " with MCP " + mcpVersion + ".");
+      task.getMcVersion().set(mcVersion);
+      task.getMcpVersion().set(mcpVersion);
+      task.getSrgZip().from(srgConfig);
+      task.getMcpZip().from(mcpConfig);
+      task.getIntermediaryJar().from(intConfig);
+      task.getEntryCompression().set(extension.getEntryCompression());
+      task.getCompressionLevel().set(extension.getCompressionLevel());
+      task.getOutputJar().set(owner.getLayout().getBuildDirectory().file("mcptiny/" + mcVersion + "-" + mcpVersion + "/mcp-mappings-tiny-v2.jar"));
+      task.getReportFile().set(owner.getLayout().getBuildDirectory().file("mcptiny/" + mcVersion + "-" + mcpVersion + "/generation-report.json"));
+    });
   }
 
-  private void packTiny(Project project, McpTree tree, File target) {
-    File dir = new File(project.getBuildDir(), "tmp");
-    dir.mkdirs();
-    File tmpFile = new File(dir, "mcp-tmp.tiny");
-    List<String> namespaces = Collections.unmodifiableList(Arrays.asList("intermediary", "named"));
-    try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tmpFile.toPath()))) {
-      TinyPrinter.print(writer, tree, namespaces);
-    } catch (IOException ex) {
-      throw new UncheckedIOException(ex);
+  private void addRepositories(Project project) {
+    RepositoryHandler repositories = project.getRepositories();
+    if (repositories.findByName("forge") == null) {
+      repositories.maven(repo -> {
+        repo.setName("forge");
+        repo.setUrl(project.uri("https://files.minecraftforge.net/maven/"));
+      });
     }
-
-    try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)))) {
-      zipOutputStream.putNextEntry(new ZipEntry("mappings/mappings.tiny"));
-      zipOutputStream.write(Files.readAllBytes(tmpFile.toPath()));
-      zipOutputStream.closeEntry();
-    } catch (IOException ex) {
-      throw new UncheckedIOException(ex);
+    if (repositories.findByName("fabricintermediary") == null) {
+      repositories.maven(repo -> {
+        repo.setName("fabricintermediary");
+        repo.setUrl(project.uri("https://maven.fabricmc.net"));
+      });
     }
   }
 }
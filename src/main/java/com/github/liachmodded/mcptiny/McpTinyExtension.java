@@ -26,28 +26,60 @@
  */
 package com.github.liachmodded.mcptiny;
 
+import java.util.zip.Deflater;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.provider.Property;
 
 public class McpTinyExtension {
 
   private final Project project;
   private final McpTiny plugin;
+  private final Property<String> entryCompression;
+  private final Property<Integer> compressionLevel;
 
   public McpTinyExtension(Project project, McpTiny plugin) {
     this.project = project;
     this.plugin = plugin;
+    this.entryCompression = project.getObjects().property(String.class);
+    this.entryCompression.set("DEFLATED");
+    this.compressionLevel = project.getObjects().property(Integer.class);
+    this.compressionLevel.set(Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Gets the compression method of the generated mappings entry, either {@code STORED} or
+   * {@code DEFLATED}. Defaults to {@code DEFLATED}.
+   *
+   * @return the entry compression property
+   */
+  public Property<String> getEntryCompression() {
+    return entryCompression;
+  }
+
+  /**
+   * Gets the deflater level of the generated mappings entry, from 0 to 9 or -1 for the default level.
+   * Ignored for stored entries.
+   *
+   * @return the compression level property
+   */
+  public Property<Integer> getCompressionLevel() {
+    return compressionLevel;
   }
 
   /**
    * Creates a dependency on a specified MCP mapping.
    *
+   * <p>In a multi-project build, each pair of versions is generated once for the whole build, into the
+   * build directory of the root project, with the compression settings of the first project requesting
+   * it. Projects asking for other settings get a warning.</p>
+   *
    * @param mcVersion the target Minecraft version
    * @param mcpVersion the target MCP snapshot version
    * @return the created dependency
    */
   public Dependency mcp(String mcVersion, String mcpVersion) {
-    return plugin.makeMapping(project, mcVersion, mcpVersion);
+    return plugin.makeMapping(project, this, mcVersion, mcpVersion);
   }
 //    http://export.mcpbot.bspk.rs/mcp_snapshot_nodoc/20191108-1.14.3/mcp_snapshot_nodoc-20191108-1.14.3.zip
 //    http://export.mcpbot.bspk.rs/mcp_snapshot/20191108-1.14.3/mcp_snapshot-20191108-1.14.3.zip
@@ -0,0 +1,210 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.plugins.ExtraPropertiesExtension;
+import org.gradle.api.provider.Provider;
+
+/**
+ * Shares mapping generations between all projects of a build, so each pair of Minecraft and MCP versions
+ * gets one task and one jar however many projects depend on it, and is never generated twice at once.
+ *
+ * <p>Gradle 5.6 has no build services, so the service is kept in the extra properties of the root
+ * project, which live exactly as long as the build. A project whose plugin was loaded by another class
+ * loader than the root project's cannot use that instance, and keeps its own. The service is only used
+ * while configuring; tasks never refer to it.</p>
+ */
+final class SharedMappingService {
+
+  private static final Logger LOGGER = Logging.getLogger(SharedMappingService.class);
+  private static final String PROPERTY = "com.github.liachmodded.mcptiny.sharedMappingService";
+  private static final String GENERATIONS_PROPERTY = "com.github.liachmodded.mcptiny.generations";
+  private static final Object LOCK = new Object();
+
+  private final String ownerPath;
+  private final Map<String, McpMappingDependency> dependencies = new HashMap<>(); // guarded by this
+  private final Map<String, Settings> settings = new HashMap<>(); // guarded by this
+
+  private SharedMappingService(String ownerPath) {
+    this.ownerPath = ownerPath;
+  }
+
+  static SharedMappingService get(Project project) {
+    Project root = project.getRootProject();
+    synchronized (LOCK) {
+      Project owner = root;
+      if (root.getExtensions().getExtraProperties().has(PROPERTY)) {
+        @Nullable SharedMappingService ret = find(root);
+        if (ret != null) {
+          return ret;
+        }
+        owner = project; // the root service belongs to another class loader
+        ret = find(project);
+        if (ret != null) {
+          return ret;
+        }
+      }
+      SharedMappingService created = new SharedMappingService(owner.getPath());
+      owner.getExtensions().getExtraProperties().set(PROPERTY, created);
+      return created;
+    }
+  }
+
+  private static @Nullable SharedMappingService find(Project project) {
+    ExtraPropertiesExtension extra = project.getExtensions().getExtraProperties();
+    @Nullable Object ret = extra.has(PROPERTY) ? extra.get(PROPERTY) : null;
+    return ret instanceof SharedMappingService ? (SharedMappingService) ret : null;
+  }
+
+  /**
+   * Gets the project that shared tasks are registered in and that shared jars are built in.
+   *
+   * @param project any project of the build
+   */
+  Project getOwner(Project project) {
+    return project.project(ownerPath);
+  }
+
+  /**
+   * Gets a dependency on the mappings of a version pair, creating the dependency and its task for the
+   * first request of that pair. The jar is packed with the settings of the first requesting project, and
+   * any other project asking for different settings is warned once all projects are evaluated.
+   *
+   * @return a copy of the shared dependency, as each project gets its own dependency instances
+   */
+  synchronized McpMappingDependency getDependency(Project project, McpTinyExtension extension, String mcVersion,
+      String mcpVersion, Supplier<McpMappingDependency> factory) {
+    String coordinates = mcVersion + ":" + mcpVersion;
+    Settings requested = new Settings(project.getPath(), extension.getEntryCompression(),
+        extension.getCompressionLevel());
+    Settings first = settings.computeIfAbsent(coordinates, k -> requested);
+    if (!first.projectPath.equals(requested.projectPath)) {
+      project.getGradle().projectsEvaluated(gradle -> requested.check(coordinates, first));
+    }
+    return dependencies.computeIfAbsent(coordinates, k -> factory.get()).copy();
+  }
+
+  /**
+   * Runs the generation of an output jar, or waits for it if it is already running on another thread.
+   * Only running generations are shared; once one finishes, a later request runs again and relies on the
+   * up-to-date checks of the task and the mapping cache to skip the work.
+   *
+   * <p>This runs at execution time, so it finds running generations through a map of JDK types kept in
+   * the system properties rather than through the service: that map is the same for every class loader
+   * the plugin is loaded by, and tasks do not need to hold any configuration state to reach it.</p>
+   */
+  static void generate(File output, Runnable generation) {
+    ConcurrentMap<String, CompletableFuture<Void>> generations = generations();
+    String key = output.getAbsolutePath();
+    CompletableFuture<Void> created = new CompletableFuture<>();
+    @Nullable CompletableFuture<Void> existing = generations.putIfAbsent(key, created);
+    if (existing != null) {
+      join(existing);
+      return;
+    }
+    try {
+      generation.run();
+      created.complete(null);
+    } catch (RuntimeException | Error ex) {
+      created.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      generations.remove(key, created);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ConcurrentMap<String, CompletableFuture<Void>> generations() {
+    Properties properties = System.getProperties();
+    @Nullable Object ret = properties.get(GENERATIONS_PROPERTY);
+    if (ret == null) {
+      ConcurrentMap<String, CompletableFuture<Void>> created = new ConcurrentHashMap<>();
+      ret = properties.putIfAbsent(GENERATIONS_PROPERTY, created); // atomic, properties are a Hashtable
+      if (ret == null) {
+        return created;
+      }
+    }
+    return (ConcurrentMap<String, CompletableFuture<Void>>) ret;
+  }
+
+  private static void join(CompletableFuture<Void> future) {
+    try {
+      future.join();
+    } catch (CompletionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * The packing settings a project asked for, read lazily as they may be set after the request.
+   */
+  private static final class Settings {
+
+    final String projectPath;
+    final Provider<String> entryCompression;
+    final Provider<Integer> compressionLevel;
+
+    Settings(String projectPath, Provider<String> entryCompression, Provider<Integer> compressionLevel) {
+      this.projectPath = projectPath;
+      this.entryCompression = entryCompression;
+      this.compressionLevel = compressionLevel;
+    }
+
+    void check(String coordinates, Settings used) {
+      String compression = entryCompression.get();
+      int level = compressionLevel.get();
+      String usedCompression = used.entryCompression.get();
+      int usedLevel = used.compressionLevel.get();
+      if (!Objects.equals(compression, usedCompression) || level != usedLevel) {
+        LOGGER.warn("Project {} asks for mcp mappings {} packed as {} at level {}, but they are shared with "
+                + "project {} and packed as {} at level {}", projectPath, coordinates, compression, level,
+            used.projectPath, usedCompression, usedLevel);
+      }
+    }
+  }
+}
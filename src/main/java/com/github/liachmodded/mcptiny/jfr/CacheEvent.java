@@ -0,0 +1,68 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.jfr;
+
+import com.github.liachmodded.mcptiny.jfr.FlightRecorderSupport.Field;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A flight recorder event for one lookup in the mapping cache. A miss lasts until the missing file has
+ * been generated and published.
+ */
+public final class CacheEvent {
+
+  private static final @Nullable Object FACTORY = FlightRecorderSupport.define("CacheLookup", "Cache Lookup",
+      "Looks up a generated jar or snapshot in the Gradle user home cache",
+      Field.of(String.class, "key", "Key"),
+      Field.of(boolean.class, "hit", "Hit"),
+      Field.bytes("size", "File Size"));
+  private static final CacheEvent DISABLED = new CacheEvent(null);
+
+  private final @Nullable Object event;
+
+  private CacheEvent(@Nullable Object event) {
+    this.event = event;
+  }
+
+  public static CacheEvent begin() {
+    if (FACTORY == null) {
+      return DISABLED;
+    }
+    return new CacheEvent(FlightRecorderSupport.begin(FACTORY));
+  }
+
+  /**
+   * Ends and commits this event.
+   *
+   * @param key the cache key
+   * @param hit whether the file was already cached, so no generation happened
+   * @param size the size of the cached file
+   */
+  public void commit(String key, boolean hit, long size) {
+    FlightRecorderSupport.commit(event, key, hit, size);
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.jfr;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+/**
+ * Defines and commits flight recorder events through {@code jdk.jfr.EventFactory}.
+ *
+ * <p>The plugin targets Java 8, where flight recorder may be missing, so the whole api is looked up
+ * reflectively once. Event types are only registered when it is present, and all other methods do nothing
+ * when it is not. An event type that fails to register is logged once and left out the same way.</p>
+ */
+final class FlightRecorderSupport {
+
+  static final String CATEGORY = "Mcptiny";
+  private static final Logger LOGGER = Logging.getLogger(FlightRecorderSupport.class);
+  private static final AtomicBoolean WARNED = new AtomicBoolean();
+  private static final @Nullable FlightRecorderSupport INSTANCE = load();
+
+  private final Class<? extends Annotation> name;
+  private final Class<? extends Annotation> label;
+  private final Class<? extends Annotation> description;
+  private final Class<? extends Annotation> category;
+  private final Class<? extends Annotation> dataAmount;
+  private final Constructor<?> annotationElement;
+  private final Constructor<?> valueDescriptor;
+  private final Method create;
+  private final MethodHandle newEvent;
+  private final MethodHandle begin;
+  private final MethodHandle set;
+  private final MethodHandle commit;
+
+  private FlightRecorderSupport() throws ReflectiveOperationException {
+    this.name = annotation("Name");
+    this.label = annotation("Label");
+    this.description = annotation("Description");
+    this.category = annotation("Category");
+    this.dataAmount = annotation("DataAmount");
+    Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+    this.annotationElement = annotationElement.getConstructor(Class.class, Object.class);
+    this.valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+    Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+    this.create = eventFactory.getMethod("create", List.class, List.class);
+
+    Class<?> event = Class.forName("jdk.jfr.Event");
+    MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+    this.newEvent = lookup.findVirtual(eventFactory, "newEvent", MethodType.methodType(event))
+        .asType(MethodType.methodType(Object.class, Object.class));
+    this.begin = lookup.findVirtual(event, "begin", MethodType.methodType(void.class))
+        .asType(MethodType.methodType(void.class, Object.class));
+    this.set = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class))
+        .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+    this.commit = lookup.findVirtual(event, "commit", MethodType.methodType(void.class))
+        .asType(MethodType.methodType(void.class, Object.class));
+  }
+
+  private static @Nullable FlightRecorderSupport load() {
+    try {
+      Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+      if (!(Boolean) recorder.getMethod("isAvailable").invoke(null)) {
+        return null;
+      }
+      return new FlightRecorderSupport();
+    } catch (ReflectiveOperationException | LinkageError | SecurityException ex) {
+      return null; // no flight recorder in this vm
+    }
+  }
+
+  private static Class<? extends Annotation> annotation(String simpleName) throws ClassNotFoundException {
+    return Class.forName("jdk.jfr." + simpleName).asSubclass(Annotation.class);
+  }
+
+  /**
+   * Defines and registers an event type in the {@value #CATEGORY} category.
+   *
+   * @param name the event name, without the {@code mcptiny.} prefix
+   * @return an {@code EventFactory}, or {@code null} if flight recorder is unavailable or rejects the event
+   */
+  static @Nullable Object define(String name, String label, String description, Field... fields) {
+    FlightRecorderSupport support = INSTANCE;
+    if (support == null) {
+      return null;
+    }
+    try {
+      return support.create(name, label, description, fields);
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+      // called from event class initializers, so failing here would break every loader; go without it
+      if (WARNED.compareAndSet(false, true)) {
+        LOGGER.warn("Failed to define flight recorder event {}, events may be missing", name, ex);
+      }
+      return null;
+    }
+  }
+
+  private Object create(String eventName, String eventLabel, String eventDescription, Field[] fields)
+      throws ReflectiveOperationException {
+    List<Object> annotations = Arrays.asList(
+        element(name, "mcptiny." + eventName),
+        element(label, eventLabel),
+        element(description, eventDescription),
+        element(category, new String[] {CATEGORY}));
+    List<Object> values = new ArrayList<>(fields.length);
+    for (Field field : fields) {
+      List<Object> fieldAnnotations = new ArrayList<>(2);
+      fieldAnnotations.add(element(label, field.label));
+      if (field.bytes) {
+        fieldAnnotations.add(element(dataAmount, "BYTES"));
+      }
+      values.add(valueDescriptor.newInstance(field.type, field.name, fieldAnnotations));
+    }
+    return create.invoke(null, annotations, values);
+  }
+
+  private Object element(Class<? extends Annotation> type, Object value) throws ReflectiveOperationException {
+    return annotationElement.newInstance(type, value);
+  }
+
+  /**
+   * Creates and begins an event.
+   *
+   * @param factory an event factory from {@link #define}, or {@code null}
+   * @return the event, or {@code null} if the factory is {@code null}
+   */
+  static @Nullable Object begin(@Nullable Object factory) {
+    FlightRecorderSupport support = INSTANCE;
+    if (support == null || factory == null) {
+      return null;
+    }
+    try {
+      Object event = (Object) support.newEvent.invokeExact(factory);
+      support.begin.invokeExact(event);
+      return event;
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Sets the fields of an event in definition order and commits it, which ends it too. The event is only
+   * written if its type is enabled in a running recording.
+   *
+   * @param event an event from {@link #begin}, or {@code null}
+   */
+  static void commit(@Nullable Object event, Object... values) {
+    FlightRecorderSupport support = INSTANCE;
+    if (support == null || event == null) {
+      return;
+    }
+    try {
+      for (int i = 0; i < values.length; i++) {
+        support.set.invokeExact(event, i, values[i]);
+      }
+      support.commit.invokeExact(event);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * A field of an event type.
+   */
+  static final class Field {
+
+    final Class<?> type;
+    final String name;
+    final String label;
+    final boolean bytes;
+
+    private Field(Class<?> type, String name, String label, boolean bytes) {
+      this.type = type;
+      this.name = name;
+      this.label = label;
+      this.bytes = bytes;
+    }
+
+    static Field of(Class<?> type, String name, String label) {
+      return new Field(type, name, label, false);
+    }
+
+    static Field bytes(String name, String label) {
+      return new Field(long.class, name, label, true);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.jfr;
+
+import com.github.liachmodded.mcptiny.jfr.FlightRecorderSupport.Field;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A flight recorder event for one run of a mapping loader or printer, carrying its duration, the bytes it
+ * read or wrote, the entries it handled and the entries it could not apply.
+ *
+ * <p>Events are only created when flight recorder is available, otherwise {@link #begin} returns a
+ * shared no-op instance.</p>
+ */
+public final class LoaderEvent {
+
+  private static final LoaderEvent DISABLED = new LoaderEvent(null);
+
+  private final @Nullable Object event;
+
+  private LoaderEvent(@Nullable Object event) {
+    this.event = event;
+  }
+
+  public static LoaderEvent begin(Kind kind) {
+    if (kind.factory == null) {
+      return DISABLED;
+    }
+    return new LoaderEvent(FlightRecorderSupport.begin(kind.factory));
+  }
+
+  /**
+   * Ends and commits this event.
+   *
+   * @param size the bytes read or written, or 0 if there was no input of its own
+   * @param entries the lines, rows or classes handled
+   * @param misses the entries that could not be applied
+   */
+  public void commit(long size, long entries, long misses) {
+    FlightRecorderSupport.commit(event, size, entries, misses);
+  }
+
+  public enum Kind {
+    LOAD_TSRG("LoadTsrg", "Load TSRG", "Loads classes and members from joined.tsrg"),
+    LOAD_CONSTRUCTORS("LoadConstructors", "Load Constructors", "Loads srg constructors from constructors.txt"),
+    LOAD_STATIC_METHODS("LoadStaticMethods", "Load Static Methods", "Marks the methods in static_methods.txt as static"),
+    READ_MCP_CSV("ReadMcpCsv", "Read MCP CSV", "Reads the rows of an MCP snapshot csv"),
+    APPLY_MCP_METHODS("ApplyMcpMethods", "Apply MCP Methods", "Applies the names and comments of methods.csv"),
+    APPLY_MCP_FIELDS("ApplyMcpFields", "Apply MCP Fields", "Applies the names and comments of fields.csv"),
+    APPLY_MCP_PARAMS("ApplyMcpParams", "Apply MCP Params", "Applies the names of params.csv"),
+    READ_INTERMEDIARY("ReadIntermediary", "Read Intermediary", "Reads a tiny v2 intermediary file"),
+    MERGE_INTERMEDIARY("MergeIntermediary", "Merge Intermediary", "Adds intermediary names and field descriptors to a tree"),
+    PRINT_TINY("PrintTiny", "Print Tiny", "Prints a tree as tiny v2");
+
+    final @Nullable Object factory;
+
+    Kind(String name, String label, String description) {
+      this.factory = FlightRecorderSupport.define(name, label, description,
+          Field.bytes("size", "Size"),
+          Field.of(long.class, "entries", "Entries"),
+          Field.of(long.class, "misses", "Misses"));
+    }
+  }
+}
@@ -0,0 +1,599 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.IntFunction;
+import net.fabricmc.mapping.reader.v2.TinyMetadata;
+import net.fabricmc.mapping.tree.ClassDef;
+import net.fabricmc.mapping.tree.Descriptored;
+import net.fabricmc.mapping.tree.FieldDef;
+import net.fabricmc.mapping.tree.LocalVariableDef;
+import net.fabricmc.mapping.tree.Mapped;
+import net.fabricmc.mapping.tree.MethodDef;
+import net.fabricmc.mapping.tree.ParameterDef;
+import net.fabricmc.mapping.tree.TinyTree;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A read-only, columnar copy of a frozen {@link McpTree}.
+ *
+ * <p>Instead of one object per class, member and parameter, every name, descriptor and comment is an
+ * int id into a shared string table, stored in one array per namespace. The table is a single UTF-8
+ * byte array, and strings are only decoded when they are asked for. The members of a class and the
+ * parameters of a method are contiguous ranges, given by start offsets. {@link ClassDef}s and other
+ * views only hold an index; one is created per element along with the tree and shared by all lookups.</p>
+ *
+ * <p>The source tree is emptied while it is copied, and each class can be collected as soon as it is
+ * copied, so both trees are never fully live at once.</p>
+ */
+public final class CompactMcpTree implements TinyTree {
+
+  private static final TinyMetadata METADATA = new Metadata();
+  private static final int NONE = -1;
+  // name columns
+  private static final int OFFICIAL = 0;
+  private static final int INTERMEDIARY = 1;
+  private static final int SEARGE = 2;
+  private static final int NAMED = 3;
+  private static final int NAMESPACE_COUNT = 4;
+  // descriptor columns
+  private static final int DESC_COUNT = 2;
+
+  private final byte[] chars;
+  private final int[] offsets; // string i is chars[offsets[i], offsets[i + 1])
+
+  private final int[][] classNames;
+  private final int[] classComments;
+  private final int[] fieldStarts; // fields of class i are [fieldStarts[i], fieldStarts[i + 1])
+  private final int[] methodStarts;
+
+  private final int[][] fieldNames;
+  private final int[][] fieldDescs;
+  private final int[] fieldComments;
+
+  private final int[][] methodNames;
+  private final int[][] methodDescs;
+  private final int[] methodComments;
+  private final int[] paramStarts;
+
+  private final int[][] paramNames;
+  private final int[] paramComments;
+  private final int[] paramIndices;
+
+  private final ClassView[] classViews;
+  private final FieldView[] fieldViews;
+  private final MethodView[] methodViews;
+  private final ParamView[] paramViews;
+  private final ClassMap classMap = new ClassMap();
+
+  private CompactMcpTree(Builder builder) {
+    this.chars = Arrays.copyOf(builder.chars, builder.length);
+    this.offsets = Arrays.copyOf(builder.offsets, builder.ids.size() + 1);
+    this.classNames = builder.classNames;
+    this.classComments = builder.classComments;
+    this.fieldStarts = builder.fieldStarts;
+    this.methodStarts = builder.methodStarts;
+    this.fieldNames = builder.fieldNames;
+    this.fieldDescs = builder.fieldDescs;
+    this.fieldComments = builder.fieldComments;
+    this.methodNames = builder.methodNames;
+    this.methodDescs = builder.methodDescs;
+    this.methodComments = builder.methodComments;
+    this.paramStarts = builder.paramStarts;
+    this.paramNames = builder.paramNames;
+    this.paramComments = builder.paramComments;
+    this.paramIndices = builder.paramIndices;
+    this.classViews = views(new ClassView[getClassCount()], ClassView::new);
+    this.fieldViews = views(new FieldView[getFieldCount()], FieldView::new);
+    this.methodViews = views(new MethodView[getMethodCount()], MethodView::new);
+    this.paramViews = views(new ParamView[getParameterCount()], ParamView::new);
+  }
+
+  private static <T> T[] views(T[] views, IntFunction<? extends T> view) {
+    for (int i = 0; i < views.length; i++) {
+      views[i] = view.apply(i);
+    }
+    return views;
+  }
+
+  /**
+   * Moves a tree into the compact form. The source tree is left empty, so it cannot be used afterwards.
+   *
+   * @param tree the tree, which must be frozen
+   * @return the compact tree
+   */
+  public static CompactMcpTree of(McpTree tree) {
+    return new CompactMcpTree(new Builder(tree.release()));
+  }
+
+  public int getClassCount() {
+    return classComments.length;
+  }
+
+  public int getFieldCount() {
+    return fieldComments.length;
+  }
+
+  public int getMethodCount() {
+    return methodComments.length;
+  }
+
+  public int getParameterCount() {
+    return paramComments.length;
+  }
+
+  public int getStringCount() {
+    return offsets.length - 1;
+  }
+
+  @Override
+  public TinyMetadata getMetadata() {
+    return METADATA;
+  }
+
+  @Override
+  public Map<String, ClassDef> getDefaultNamespaceClassMap() {
+    return classMap;
+  }
+
+  @Override
+  public Collection<ClassDef> getClasses() {
+    return new RangeList<>(classViews, 0, getClassCount());
+  }
+
+  private @Nullable String string(int id) {
+    return id == NONE ? null : decode(id);
+  }
+
+  private String decode(int id) {
+    return new String(chars, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+  }
+
+  private static int column(String namespace) {
+    switch (namespace) {
+      case "official":
+        return OFFICIAL;
+      case "intermediary":
+        return INTERMEDIARY;
+      case "searge":
+        return SEARGE;
+      case "named":
+        return NAMED;
+    }
+    throw new UnsupportedOperationException("Unknown namespace " + namespace);
+  }
+
+  private static int descColumn(String namespace) {
+    switch (namespace) {
+      case "official":
+        return OFFICIAL;
+      case "intermediary":
+        return INTERMEDIARY;
+    }
+    throw new UnsupportedOperationException("Unsupported namespace \"" + namespace + "\" for descriptor");
+  }
+
+  // mirrors McpMapped, where a missing intermediary name fails on access
+  private String name(int[][] names, int index, String namespace) {
+    int column = column(namespace);
+    @Nullable String ret = string(names[column][index]);
+    if (ret == null) {
+      throw new NullPointerException(decode(names[SEARGE][index]) + " has no int mapping!");
+    }
+    return ret;
+  }
+
+  private final class ClassView implements ClassDef {
+
+    private final int index;
+
+    ClassView(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public String getName(String namespace) {
+      return name(classNames, index, namespace);
+    }
+
+    @Override
+    public String getRawName(String namespace) {
+      return getName(namespace);
+    }
+
+    @Override
+    public @Nullable String getComment() {
+      return string(classComments[index]);
+    }
+
+    @Override
+    public Collection<MethodDef> getMethods() {
+      return new RangeList<>(methodViews, methodStarts[index], methodStarts[index + 1]);
+    }
+
+    @Override
+    public Collection<FieldDef> getFields() {
+      return new RangeList<>(fieldViews, fieldStarts[index], fieldStarts[index + 1]);
+    }
+  }
+
+  // the columns are looked up per call, so a view costs no more than its index
+  private abstract class MemberView implements Mapped, Descriptored {
+
+    final int index;
+
+    MemberView(int index) {
+      this.index = index;
+    }
+
+    abstract int[][] names();
+
+    abstract int[][] descs();
+
+    abstract int[] comments();
+
+    @Override
+    public String getName(String namespace) {
+      return name(names(), index, namespace);
+    }
+
+    @Override
+    public String getRawName(String namespace) {
+      return getName(namespace);
+    }
+
+    @Override
+    public @Nullable String getComment() {
+      return string(comments()[index]);
+    }
+
+    @Override
+    public String getDescriptor(String namespace) {
+      return decode(descs()[descColumn(namespace)][index]);
+    }
+  }
+
+  private final class FieldView extends MemberView implements FieldDef {
+
+    FieldView(int index) {
+      super(index);
+    }
+
+    @Override
+    int[][] names() {
+      return fieldNames;
+    }
+
+    @Override
+    int[][] descs() {
+      return fieldDescs;
+    }
+
+    @Override
+    int[] comments() {
+      return fieldComments;
+    }
+  }
+
+  private final class MethodView extends MemberView implements MethodDef {
+
+    MethodView(int index) {
+      super(index);
+    }
+
+    @Override
+    int[][] names() {
+      return methodNames;
+    }
+
+    @Override
+    int[][] descs() {
+      return methodDescs;
+    }
+
+    @Override
+    int[] comments() {
+      return methodComments;
+    }
+
+    @Override
+    public Collection<ParameterDef> getParameters() {
+      return new RangeList<>(paramViews, paramStarts[index], paramStarts[index + 1]);
+    }
+
+    @Override
+    public Collection<LocalVariableDef> getLocalVariables() {
+      return Collections.emptyList();
+    }
+  }
+
+  private final class ParamView implements ParameterDef {
+
+    private final int index;
+
+    ParamView(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public String getName(String namespace) {
+      return name(paramNames, index, namespace);
+    }
+
+    @Override
+    public String getRawName(String namespace) {
+      return getName(namespace);
+    }
+
+    @Override
+    public @Nullable String getComment() {
+      return string(paramComments[index]);
+    }
+
+    @Override
+    public int getLocalVariableIndex() {
+      return paramIndices[index];
+    }
+  }
+
+  private static final class RangeList<T> extends AbstractList<T> implements RandomAccess {
+
+    private final T[] views;
+    private final int start;
+    private final int end;
+
+    RangeList(T[] views, int start, int end) {
+      this.views = views;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public T get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+      }
+      return views[start + index];
+    }
+
+    @Override
+    public int size() {
+      return end - start;
+    }
+  }
+
+  // classes are stored sorted by official name, so lookups are binary searches
+  private final class ClassMap extends AbstractMap<String, ClassDef> {
+
+    @Override
+    public @Nullable ClassDef get(Object key) {
+      int index = indexOf(key);
+      return index < 0 ? null : classViews[index];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+      return getClassCount();
+    }
+
+    private int indexOf(Object key) {
+      if (!(key instanceof String)) {
+        return -1;
+      }
+      int[] obf = classNames[OFFICIAL];
+      int low = 0;
+      int high = obf.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = decode(obf[mid]).compareTo((String) key);
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public Set<Entry<String, ClassDef>> entrySet() {
+      return new AbstractSet<Entry<String, ClassDef>>() {
+        @Override
+        public Iterator<Entry<String, ClassDef>> iterator() {
+          return new Iterator<Entry<String, ClassDef>>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+              return next < getClassCount();
+            }
+
+            @Override
+            public Entry<String, ClassDef> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              int i = next++;
+              return new SimpleImmutableEntry<>(decode(classNames[OFFICIAL][i]), classViews[i]);
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return getClassCount();
+        }
+      };
+    }
+  }
+
+  private static final class Builder {
+
+    final Map<String, Integer> ids = new HashMap<>();
+    byte[] chars = new byte[1 << 16];
+    int length;
+    int[] offsets = new int[1 << 12];
+
+    final int[][] classNames;
+    final int[] classComments;
+    final int[] fieldStarts;
+    final int[] methodStarts;
+    final int[][] fieldNames;
+    final int[][] fieldDescs;
+    final int[] fieldComments;
+    final int[][] methodNames;
+    final int[][] methodDescs;
+    final int[] methodComments;
+    final int[] paramStarts;
+    final int[][] paramNames;
+    final int[] paramComments;
+    final int[] paramIndices;
+
+    /**
+     * @param classes the classes to copy, each of which is cleared from the list once copied
+     */
+    Builder(List<McpClass> classes) {
+      int fieldCount = 0;
+      int methodCount = 0;
+      int paramCount = 0;
+      for (McpClass mcpClass : classes) {
+        fieldCount += mcpClass.getMcpFields().size();
+        methodCount += mcpClass.getMcpMethods().size();
+        for (McpMethod method : mcpClass.getMcpMethods()) {
+          paramCount += method.getMcpParams().size();
+        }
+      }
+
+      classNames = new int[NAMESPACE_COUNT][classes.size()];
+      classComments = new int[classes.size()];
+      fieldStarts = new int[classes.size() + 1];
+      methodStarts = new int[classes.size() + 1];
+      fieldNames = new int[NAMESPACE_COUNT][fieldCount];
+      fieldDescs = new int[DESC_COUNT][fieldCount];
+      fieldComments = new int[fieldCount];
+      methodNames = new int[NAMESPACE_COUNT][methodCount];
+      methodDescs = new int[DESC_COUNT][methodCount];
+      methodComments = new int[methodCount];
+      paramStarts = new int[methodCount + 1];
+      paramNames = new int[NAMESPACE_COUNT][paramCount];
+      paramComments = new int[paramCount];
+      paramIndices = new int[paramCount];
+
+      int c = 0;
+      int f = 0;
+      int m = 0;
+      int p = 0;
+      for (int i = 0; i < classes.size(); i++) {
+        McpClass mcpClass = classes.get(i);
+        classes.set(i, null); // members only held by this class can go now
+        putNames(classNames, c, mcpClass);
+        classComments[c] = id(mcpClass.getComment());
+        fieldStarts[c] = f;
+        methodStarts[c] = m;
+        c++;
+        for (McpField field : mcpClass.getMcpFields()) {
+          putNames(fieldNames, f, field);
+          putDescs(fieldDescs, f, field);
+          fieldComments[f] = id(field.getComment());
+          f++;
+        }
+        for (McpMethod method : mcpClass.getMcpMethods()) {
+          putNames(methodNames, m, method);
+          putDescs(methodDescs, m, method);
+          methodComments[m] = id(method.getComment());
+          paramStarts[m] = p;
+          m++;
+          for (McpParam param : method.getMcpParams().values()) {
+            putNames(paramNames, p, param);
+            paramComments[p] = id(param.getComment());
+            paramIndices[p] = param.getLocalVariableIndex();
+            p++;
+          }
+        }
+      }
+      fieldStarts[c] = f;
+      methodStarts[c] = m;
+      paramStarts[m] = p;
+    }
+
+    private void putNames(int[][] names, int index, McpMapped mapped) {
+      names[OFFICIAL][index] = id(mapped.getObf());
+      // params fall back to an empty name, and everything else fails on access
+      names[INTERMEDIARY][index] = mapped instanceof McpParam ? id(mapped.getName("intermediary")) : id(mapped.getIntermediary());
+      names[SEARGE][index] = id(mapped.getSrg());
+      names[NAMED][index] = id(mapped.getMcp());
+    }
+
+    private void putDescs(int[][] descs, int index, McpDescriptored descriptored) {
+      descs[OFFICIAL][index] = id(descriptored.getDescriptor("official"));
+      descs[INTERMEDIARY][index] = id(descriptored.getDescriptor("intermediary"));
+    }
+
+    private int id(@Nullable String value) {
+      if (value == null) {
+        return NONE;
+      }
+      @Nullable Integer ret = ids.get(value);
+      if (ret == null) {
+        ret = ids.size();
+        ids.put(value, ret);
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        if (length + encoded.length > chars.length) {
+          chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + encoded.length));
+        }
+        System.arraycopy(encoded, 0, chars, length, encoded.length);
+        length += encoded.length;
+        if (ret + 2 > offsets.length) {
+          offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[ret + 1] = length;
+      }
+      return ret;
+    }
+  }
+}
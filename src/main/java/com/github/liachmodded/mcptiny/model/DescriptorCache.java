@@ -0,0 +1,71 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.model;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import net.fabricmc.mapping.util.ClassMapper;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Remaps official descriptors to intermediary, memoizing the results for a whole tree.
+ *
+ * <p>Many members share descriptors such as {@code ()V}, so each distinct descriptor is only remapped
+ * once. The memoized results are dropped whenever a class mapping changes.</p>
+ *
+ * <p>Hits are lock-free. Misses and class changes share a lock, so a descriptor remapped while a class
+ * mapping changes is never memoized with the stale class name.</p>
+ */
+public final class DescriptorCache {
+
+  private final Map<String, String> obfToInt;
+  private final ClassMapper mapper;
+  private final Map<String, String> remapped = new ConcurrentHashMap<>();
+
+  public DescriptorCache(Map<String, String> obfToInt) {
+    this.obfToInt = obfToInt;
+    this.mapper = new ClassMapper(obfToInt);
+  }
+
+  public String map(String obfDesc) {
+    @Nullable String ret = remapped.get(obfDesc);
+    return ret != null ? ret : remap(obfDesc);
+  }
+
+  private synchronized String remap(String obfDesc) {
+    String ret = mapper.mapDescriptor(obfDesc);
+    remapped.put(obfDesc, ret);
+    return ret;
+  }
+
+  public synchronized void putClass(String obf, String intermediary) {
+    if (!Objects.equals(obfToInt.put(obf, intermediary), intermediary)) {
+      remapped.clear();
+    }
+  }
+}
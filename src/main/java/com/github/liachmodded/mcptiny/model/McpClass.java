@@ -28,45 +28,97 @@ package com.github.liachmodded.mcptiny.model;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import net.fabricmc.mapping.tree.ClassDef;
 import net.fabricmc.mapping.tree.FieldDef;
 import net.fabricmc.mapping.tree.MethodDef;
-import net.fabricmc.mapping.util.ClassMapper;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public final class McpClass extends McpMapped implements ClassDef {
 
-  private final Collection<McpField> mcpFields = new ArrayList<>();
-  private final Collection<McpMethod> mcpMethods = new ArrayList<>();
+  // members are kept in insertion order for deterministic output, and methods indexed for lookups
+  // mutations and lookups lock on this class, so loaders working on different classes never contend
+  private final List<McpField> mcpFields = new ArrayList<>();
+  private final List<McpMethod> mcpMethods = new ArrayList<>();
+  private final Set<McpMethod> methodSet = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final Map<String, McpMethod> methodsBySignature = new HashMap<>();
+  private final Collection<McpField> mcpFieldsView = Collections.unmodifiableList(mcpFields);
+  private final Collection<McpMethod> mcpMethodsView = Collections.unmodifiableList(mcpMethods);
   
-  private final Map<String, String> obfToIntMap;
+  private final DescriptorCache intDescriptors;
 
-  public McpClass(String obf, String srg, Map<String, String> obfToIntMap) {
+  public McpClass(String obf, String srg, DescriptorCache intDescriptors) {
     super(obf, srg);
-    this.obfToIntMap = obfToIntMap;
+    this.intDescriptors = intDescriptors;
   }
 
   @Override
   public void setIntermediary(String intermediary) {
     super.setIntermediary(intermediary);
-    this.obfToIntMap.put(getObf(), intermediary);
+    this.intDescriptors.putClass(getObf(), intermediary);
   }
 
-  public Collection<McpField> getMcpFields() {
-    return mcpFields;
+  /**
+   * Gets the fields of this class. Loaders may still add fields until the tree is frozen, so this
+   * returns a copy until then and a view afterwards.
+   */
+  public synchronized Collection<McpField> getMcpFields() {
+    return isFrozen() ? mcpFieldsView : Collections.unmodifiableList(new ArrayList<>(mcpFields));
   }
 
-  public Collection<McpMethod> getMcpMethods() {
-    return mcpMethods;
+  /**
+   * Gets the methods of this class, as a copy until the tree is frozen like {@link #getMcpFields()}.
+   */
+  public synchronized Collection<McpMethod> getMcpMethods() {
+    return isFrozen() ? mcpMethodsView : Collections.unmodifiableList(new ArrayList<>(mcpMethods));
+  }
+
+  public synchronized void addField(McpField field) {
+    checkMutable();
+    mcpFields.add(field);
+  }
+
+  /**
+   * Adds a method to this class unless it is already present.
+   *
+   * <p>The method is indexed by its srg name and its official descriptor at the time it is added.</p>
+   *
+   * @param method the method
+   * @return whether the method was added
+   */
+  public synchronized boolean addMethod(McpMethod method) {
+    checkMutable();
+    if (!methodSet.add(method)) {
+      return false;
+    }
+    mcpMethods.add(method);
+    methodsBySignature.putIfAbsent(McpMethod.signature(method.getSrg(), method.getDescriptor("official")), method);
+    return true;
+  }
+
+  public synchronized @Nullable McpMethod getMcpMethod(String srg, String obfDesc) {
+    return methodsBySignature.get(McpMethod.signature(srg, obfDesc));
+  }
+
+  @Override
+  synchronized void freeze() {
+    super.freeze();
+    mcpFields.forEach(McpField::freeze);
+    mcpMethods.forEach(McpMethod::freeze);
   }
 
   @Override
   public Collection<MethodDef> getMethods() {
-    return (Collection<MethodDef>) (Collection<?>) mcpMethods;
+    return (Collection<MethodDef>) (Collection<?>) getMcpMethods();
   }
 
   @Override
   public Collection<FieldDef> getFields() {
-    return (Collection<FieldDef>) (Collection<?>) mcpFields;
+    return (Collection<FieldDef>) (Collection<?>) getMcpFields();
   }
 }
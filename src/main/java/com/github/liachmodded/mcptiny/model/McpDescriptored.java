@@ -28,20 +28,20 @@ package com.github.liachmodded.mcptiny.model;
 
 import java.util.Objects;
 import net.fabricmc.mapping.tree.Descriptored;
-import net.fabricmc.mapping.util.ClassMapper;
 
 abstract class McpDescriptored extends McpMapped implements Descriptored {
 
   private String obfDesc;
-  private final ClassMapper intMapper;
+  private final DescriptorCache intDescriptors;
 
-  McpDescriptored(String obf, String srg, String obfDesc, ClassMapper intMapper) {
+  McpDescriptored(String obf, String srg, String obfDesc, DescriptorCache intDescriptors) {
     super(obf, srg);
     this.obfDesc = obfDesc;
-    this.intMapper = intMapper;
+    this.intDescriptors = intDescriptors;
   }
 
   public void setObfDesc(String obfDesc) {
+    checkMutable();
     this.obfDesc = obfDesc;
   }
 
@@ -51,7 +51,7 @@ abstract class McpDescriptored extends McpMapped implements Descriptored {
       return obfDesc;
     }
     if (Objects.equals("intermediary", s)) {
-      return intMapper.mapDescriptor(obfDesc);
+      return intDescriptors.map(obfDesc);
     }
     throw new UnsupportedOperationException("Unsupported namespace \"" + s + "\" for descriptor");
   }
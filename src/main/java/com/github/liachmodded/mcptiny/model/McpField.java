@@ -27,11 +27,10 @@
 package com.github.liachmodded.mcptiny.model;
 
 import net.fabricmc.mapping.tree.FieldDef;
-import net.fabricmc.mapping.util.ClassMapper;
 
 public final class McpField extends McpDescriptored implements FieldDef {
 
-  public McpField(String obf, String srg, String obfDesc, ClassMapper intMapper) {
-    super(obf, srg, obfDesc, intMapper);
+  public McpField(String obf, String srg, String obfDesc, DescriptorCache intDescriptors) {
+    super(obf, srg, obfDesc, intDescriptors);
   }
 }
@@ -38,6 +38,7 @@ abstract class McpMapped implements Mapped {
   private @MonotonicNonNull String intermediary;
   private @MonotonicNonNull String mcp;
   private @Nullable String comment;
+  private boolean frozen; // set once loading threads are joined, see McpTree#freeze
 
   McpMapped(String obf, String srg) {
     this.obf = obf;
@@ -76,6 +77,7 @@ abstract class McpMapped implements Mapped {
   }
 
   public void setIntermediary(String intermediary) {
+    checkMutable();
     this.intermediary = intermediary;
   }
 
@@ -84,6 +86,7 @@ abstract class McpMapped implements Mapped {
   }
 
   public void setMcp(String mcp) {
+    checkMutable();
     this.mcp = mcp;
   }
 
@@ -98,6 +101,21 @@ abstract class McpMapped implements Mapped {
   }
 
   public void setComment(String comment) {
+    checkMutable();
     this.comment = comment;
   }
+
+  void freeze() {
+    frozen = true;
+  }
+
+  final boolean isFrozen() {
+    return frozen;
+  }
+
+  final void checkMutable() {
+    if (frozen) {
+      throw new IllegalStateException(srg + " is frozen");
+    }
+  }
 }
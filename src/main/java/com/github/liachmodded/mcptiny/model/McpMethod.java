@@ -30,20 +30,23 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import net.fabricmc.mapping.tree.LocalVariableDef;
 import net.fabricmc.mapping.tree.MethodDef;
 import net.fabricmc.mapping.tree.ParameterDef;
-import net.fabricmc.mapping.util.ClassMapper;
 
 public final class McpMethod extends McpDescriptored implements MethodDef {
 
-  private final NavigableMap<Integer, McpParam> mcpParams = new TreeMap<>();
+  private NavigableMap<Integer, McpParam> mcpParams = new ConcurrentSkipListMap<>();
   private boolean staticModifier = false;
 
-  public McpMethod(String obf, String srg, String obfDesc, ClassMapper intMapper) {
-    super(obf, srg, obfDesc, intMapper);
+  public McpMethod(String obf, String srg, String obfDesc, DescriptorCache intDescriptors) {
+    super(obf, srg, obfDesc, intDescriptors);
   }
 
+  /**
+   * Gets the parameters of this method by index, which become read-only once the tree is frozen.
+   */
   public NavigableMap<Integer, McpParam> getMcpParams() {
     return mcpParams;
   }
@@ -53,9 +56,20 @@ public final class McpMethod extends McpDescriptored implements MethodDef {
   }
 
   public void setStaticModifier(boolean staticModifier) {
+    checkMutable();
     this.staticModifier = staticModifier;
   }
 
+  @Override
+  void freeze() {
+    if (isFrozen()) {
+      return; // shared by several classes
+    }
+    super.freeze();
+    mcpParams = Collections.unmodifiableNavigableMap(new TreeMap<>(mcpParams));
+    mcpParams.values().forEach(McpParam::freeze);
+  }
+
   @Override
   public Collection<ParameterDef> getParameters() {
     return (Collection<ParameterDef>) (Collection<?>) mcpParams.values();
@@ -65,4 +79,12 @@ public final class McpMethod extends McpDescriptored implements MethodDef {
   public Collection<LocalVariableDef> getLocalVariables() {
     return Collections.emptyList();
   }
+
+  /**
+   * Joins a method name and descriptor into one key for lookups. Descriptors always start with
+   * {@code '('}, which never appears in method names, so distinct pairs never share a key.
+   */
+  public static String signature(String name, String desc) {
+    return name.concat(desc);
+  }
 }
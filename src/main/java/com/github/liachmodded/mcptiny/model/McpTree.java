@@ -26,33 +26,49 @@
  */
 package com.github.liachmodded.mcptiny.model;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import net.fabricmc.mapping.reader.v2.TinyMetadata;
 import net.fabricmc.mapping.tree.ClassDef;
 import net.fabricmc.mapping.tree.TinyTree;
 import net.fabricmc.mapping.util.ClassMapper;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+/**
+ * A tree of mcp mappings.
+ *
+ * <p>While being built, the tree is safe for use by multiple loader threads: the tree-wide maps are
+ * concurrent, and members of a class are guarded by that class, so threads working on different classes
+ * do not contend. Once loading is done, {@link #freeze()} turns
+ * it into an immutable tree backed by plain sorted maps for printing and lookup.</p>
+ */
 public final class McpTree implements TinyTree {
 
   private static final TinyMetadata METADATA = new Metadata();
-  private final Map<String, McpClass> obfMap = new TreeMap<>();
-  private final Map<String, McpClass> srgMap = new TreeMap<>();
+  private volatile Map<String, McpClass> obfMap = new ConcurrentSkipListMap<>();
+  private volatile Map<String, McpClass> srgMap = new ConcurrentSkipListMap<>();
 
-  private final Map<String, McpField> fieldMap = new TreeMap<>(); // field_123456 -> xx; a -> RED
-  private final Map<String, McpMethod> methodMap = new TreeMap<>(); // func_123456 -> xx; func_i2345 -> xx; equals -> equals
+  private final SrgIndex<McpField> fieldIndex = new SrgIndex<>("field_"); // field_123456 -> xx; a -> RED
+  private final SrgIndex<McpMethod> methodIndex = new SrgIndex<>("func_"); // func_123456 -> xx; func_i2345 -> xx; equals -> equals
 
-  private final Map<String, String> obfToInt = new HashMap<>();
-  private final Map<String, String> srgToObf = new HashMap<>();
-  private final ClassMapper intMapper = new ClassMapper(this.obfToInt);
+  private final Map<String, String> obfToInt = new ConcurrentHashMap<>();
+  private final Map<String, String> srgToObf = new ConcurrentHashMap<>();
+  private final StringPool strings = new StringPool();
+  private final DescriptorCache intDescriptors = new DescriptorCache(this.obfToInt);
   private final ClassMapper srgToObfMapper = new ClassMapper(this.srgToObf);
+  private volatile boolean frozen;
+  private boolean released; // guarded by this
+  private int syntheticClassCount; // guarded by this
 
   public McpClass makeClass(String obf, String srg) {
-    McpClass created = new McpClass(obf, srg, this.obfToInt);
+    checkMutable();
+    McpClass created = new McpClass(obf, srg, this.intDescriptors);
     obfMap.put(obf, created);
     srgMap.put(srg, created);
     this.srgToObf.put(srg, obf);
@@ -60,22 +76,22 @@ public final class McpTree implements TinyTree {
   }
 
   public McpField makeField(McpClass parent, String obf, String desc, String srg) {
-    McpField created = new McpField(obf, srg, desc, intMapper);
-    fieldMap.put(fixName(srg), created);
-    parent.getMcpFields().add(created);
+    checkMutable();
+    McpField created = new McpField(obf, srg, desc, intDescriptors);
+    fieldIndex.put(srg, created);
+    parent.addField(created);
     return created;
   }
 
   public McpMethod makeOrGetMethod(McpClass parent, String obf, String desc, String srg) {
-    McpMethod ret = methodMap.computeIfAbsent(fixName(srg), s -> new McpMethod(obf, srg, desc, intMapper));
-    if (!parent.getMcpMethods().contains(ret)) {
-      parent.getMcpMethods().add(ret);
-    }
+    checkMutable();
+    McpMethod ret = methodIndex.computeIfAbsent(srg, () -> new McpMethod(obf, srg, desc, intDescriptors));
+    parent.addMethod(ret);
     return ret;
   }
 
-  private McpClass getMcpClass(String notation) {
-    McpClass parent = srgMap.get(notation);
+  private @Nullable McpClass getMcpClass(String notation) {
+    @Nullable McpClass parent = srgMap.get(notation);
     if (parent != null) {
       return parent;
     }
@@ -91,49 +107,71 @@ public final class McpTree implements TinyTree {
     }
 
     if (current == null) {
-      throw new IllegalArgumentException("Nonexistent class " + notation);
+      return null;
     }
 
+    synchronized (this) { // rare, so a tree-wide lock is fine
+      return makeInnerClasses(notation, current, t);
+    }
+  }
+
+  private McpClass makeInnerClasses(String notation, McpClass current, int t) {
     do {
       int start = t;
       t = notation.indexOf('$', t + 1);
       if (t < 0) {
         t = notation.length();
       }
-      McpClass created = makeClass(current.getObf() + "$" + notation.substring(start + 1, t),
-          current.getSrg() + "$" + notation.substring(start + 1, t));
-      current = created;
+      String srg = current.getSrg() + "$" + notation.substring(start + 1, t);
+      @Nullable McpClass existing = srgMap.get(srg); // another thread may have made it
+      if (existing != null) {
+        current = existing;
+      } else {
+        current = makeClass(strings.intern(current.getObf() + "$" + notation.substring(start + 1, t)), srg);
+        syntheticClassCount++;
+      }
     } while (t != notation.length());
 
     return current;
   }
 
   public McpMethod makeConstructor(String index, String owner, String srgDesc) {
-    McpClass parent = getMcpClass(owner);
-
-    String desc = srgToObfMapper.mapDescriptor(srgDesc);
+    @Nullable McpMethod ret = makeConstructorIfPresent(index, owner, srgDesc);
+    if (ret == null) {
+      throw new IllegalArgumentException("Nonexistent class " + owner);
+    }
+    return ret;
+  }
 
-    @Nullable McpMethod target = null;
-    for (McpMethod parentMethod : parent.getMcpMethods()) {
-      if (Objects.equals(parentMethod.getSrg(), "<init>") && Objects.equals(desc, parentMethod.getDescriptor("official"))) {
-        target = parentMethod;
-        break;
-      }
+  /**
+   * Adds a constructor, or returns {@code null} if neither its owner nor any outer class of the owner
+   * exists.
+   */
+  public @Nullable McpMethod makeConstructorIfPresent(String index, String owner, String srgDesc) {
+    checkMutable();
+    @Nullable McpClass parent = getMcpClass(owner);
+    if (parent == null) {
+      return null;
     }
 
+    String desc = strings.intern(srgToObfMapper.mapDescriptor(srgDesc));
+
     McpMethod result;
-    if (target == null) {
-      result = new McpMethod("<init>", "<init>", desc, intMapper);
-      parent.getMcpMethods().add(result);
-    } else {
-      result = target;
+    synchronized (parent) {
+      @Nullable McpMethod existing = parent.getMcpMethod("<init>", desc);
+      if (existing == null) {
+        result = new McpMethod("<init>", "<init>", desc, intDescriptors);
+        parent.addMethod(result);
+      } else {
+        result = existing;
+      }
     }
-    methodMap.put("func_i" + index, result);
+    methodIndex.put("func_i" + index, result);
     return result;
   }
 
   public McpField findField(String srg) {
-    McpField ret = fieldMap.get(fixName(srg));
+    @Nullable McpField ret = getField(srg);
     if (ret == null) {
       throw new IllegalArgumentException("field " + srg + " does not exist");
     }
@@ -141,38 +179,157 @@ public final class McpTree implements TinyTree {
   }
 
   public McpMethod findMethod(String srg) {
-    McpMethod ret = methodMap.get(fixName(srg));
+    @Nullable McpMethod ret = getMethod(srg);
     if (ret == null) {
       throw new IllegalArgumentException("method " + srg + " does not exist");
     }
     return ret;
   }
 
-  private McpMethod findMethodInternal(String index) {
-    McpMethod ret = methodMap.get("func_" + index);
+  /**
+   * Finds a field by srg name, or returns {@code null} if there is none. Unlike
+   * {@link #findField(String)}, a miss is cheap.
+   */
+  public @Nullable McpField getField(String srg) {
+    return fieldIndex.get(srg);
+  }
+
+  /**
+   * Finds a method by srg name, or returns {@code null} if there is none. Unlike
+   * {@link #findMethod(String)}, a miss is cheap.
+   */
+  public @Nullable McpMethod getMethod(String srg) {
+    return methodIndex.get(srg);
+  }
+
+  public McpParam makeParam(String srg) {
+    @Nullable McpParam ret = makeParamIfPresent(srg);
     if (ret == null) {
-      throw new IllegalArgumentException("method with id " + index + " does not exist");
+      throw new IllegalArgumentException("method of param " + srg + " does not exist");
     }
     return ret;
   }
 
-  public McpParam makeParam(String srg) {
-    String[] parts = srg.split("_");
-    // 0: p; 1: method id; 2: index
-    McpMethod method = findMethodInternal(parts[1]);
-    int index = Integer.parseInt(parts[2]);
+  /**
+   * Adds a param, or returns {@code null} if its method does not exist.
+   *
+   * @throws IllegalArgumentException if the srg name is not a param name
+   */
+  public @Nullable McpParam makeParamIfPresent(String srg) {
+    checkMutable();
+    // p_<method id>_<index>_
+    int idStart = srg.indexOf('_') + 1;
+    int idEnd = idStart == 0 ? -1 : srg.indexOf('_', idStart);
+    if (idEnd < 0) {
+      throw new IllegalArgumentException("malformed param " + srg);
+    }
+    int indexEnd = srg.indexOf('_', idEnd + 1);
+    int index = SrgIndex.parseDigits(srg, idEnd + 1, indexEnd < 0 ? srg.length() : indexEnd);
+    if (index < 0) {
+      throw new IllegalArgumentException("malformed param " + srg);
+    }
+
+    @Nullable McpMethod method = methodIndex.getById(srg, idStart, idEnd);
+    if (method == null) {
+      return null;
+    }
 
     McpParam created = new McpParam(index, srg);
     method.getMcpParams().put(index, created);
     return created;
   }
 
-  private String fixName(String original) {
-    String[] parts = original.split("_", 3);
-    if (parts.length >= 2) {
-      return parts[0] + "_" + parts[1];
+  private void checkMutable() {
+    if (frozen) {
+      throw new IllegalStateException("Tree is frozen");
     }
-    return parts[0];
+  }
+
+  /**
+   * Freezes this tree after loading is done. No classes, members or parameters can be added or renamed
+   * afterwards, and the class maps and parameter maps become read-only.
+   *
+   * <p>The caller must make sure all loader threads have finished, for example by joining them.</p>
+   *
+   * @return this tree
+   */
+  public synchronized McpTree freeze() {
+    if (!frozen) {
+      obfMap = Collections.unmodifiableMap(new TreeMap<>(obfMap));
+      srgMap = Collections.unmodifiableMap(new TreeMap<>(srgMap));
+      obfMap.values().forEach(McpClass::freeze);
+      // indexed members are reachable through lookups even if no class holds them
+      fieldIndex.forEach((srg, field) -> field.freeze());
+      methodIndex.forEach((srg, method) -> method.freeze());
+      frozen = true;
+    }
+    return this;
+  }
+
+  /**
+   * Gets the number of inner classes that were missing from joined.tsrg and made up from their outer
+   * class, because members referred to them.
+   */
+  public synchronized int getSyntheticClassCount() {
+    return syntheticClassCount;
+  }
+
+  /**
+   * Empties this frozen tree and hands its classes, sorted by official name, over to
+   * {@link CompactMcpTree}. Nothing else refers to the classes and members afterwards, so each class can
+   * be collected as soon as it is copied.
+   */
+  synchronized List<McpClass> release() {
+    if (!frozen) {
+      throw new IllegalStateException("Tree must be frozen before compaction");
+    }
+    if (released) {
+      throw new IllegalStateException("Tree was already compacted");
+    }
+    List<McpClass> ret = new ArrayList<>(obfMap.values());
+    obfMap = Collections.emptyMap();
+    srgMap = Collections.emptyMap();
+    fieldIndex.clear();
+    methodIndex.clear();
+    srgToObf.clear();
+    strings.clear();
+    released = true;
+    return ret;
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  synchronized void setSyntheticClassCount(int syntheticClassCount) {
+    this.syntheticClassCount = syntheticClassCount;
+  }
+
+  // raw state, for snapshots
+
+  SrgIndex<McpField> getFieldIndex() {
+    return fieldIndex;
+  }
+
+  SrgIndex<McpMethod> getMethodIndex() {
+    return methodIndex;
+  }
+
+  Map<String, String> getSrgToObf() {
+    return srgToObf;
+  }
+
+  DescriptorCache getDescriptorCache() {
+    return intDescriptors;
+  }
+
+  /**
+   * Returns the string pool shared by this tree. Classes and members keep the strings they are given, so
+   * loaders should intern obfuscated names, descriptors and mapped names through it for equal names to share
+   * one instance. Srg names are unique and are not pooled.
+   */
+  public StringPool getStringPool() {
+    return strings;
   }
 
   public Map<String, McpClass> getObfMap() {
@@ -0,0 +1,441 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Reads and writes a binary snapshot of an {@link McpTree}, so a merged tree can be restored without
+ * parsing any text mappings again.
+ *
+ * <p>A snapshot starts with a magic number and a format version, and snapshots of any other version are
+ * rejected. It is followed by a string table holding every distinct name, descriptor and comment once.
+ * The rest are varint encoded records that refer to strings and to each other by index: the fields, the
+ * methods with their parameters, the classes with the indices of their members, and finally the tree
+ * maps and srg indices. Methods are shared between classes by index, as in the tree.</p>
+ *
+ * <p>The restored tree is mutable unless the snapshotted tree was frozen, so more mappings can be
+ * applied to it.</p>
+ */
+public final class McpTreeSnapshot {
+
+  /**
+   * Bump whenever the layout, or what the tree keeps, changes.
+   */
+  public static final int FORMAT_VERSION = 1;
+  private static final int MAGIC = 0x4D435453; // MCTS
+  private static final int FROZEN = 1;
+
+  private McpTreeSnapshot() {}
+
+  /**
+   * Writes a snapshot of a tree. The tree must not change while it is written.
+   *
+   * @param tree the tree
+   * @param out the stream to write to, which is not closed
+   * @throws IOException if writing fails
+   */
+  public static void write(McpTree tree, OutputStream out) throws IOException {
+    new Writer().write(tree, out);
+  }
+
+  /**
+   * Restores a tree from a snapshot file, which is mapped into memory while it is read.
+   *
+   * @throws IllegalArgumentException if the file is not a snapshot of the current version
+   * @throws IOException if reading fails
+   */
+  public static McpTree read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return read(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Restores a tree from a snapshot, starting at the buffer position.
+   *
+   * @throws IllegalArgumentException if the buffer does not hold a snapshot of the current version
+   */
+  public static McpTree read(ByteBuffer buffer) {
+    if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+      throw new IllegalArgumentException("Not an mcp tree snapshot");
+    }
+    int version = buffer.getInt();
+    if (version != FORMAT_VERSION) {
+      throw new IllegalArgumentException("Unsupported snapshot version " + version + ", expected " + FORMAT_VERSION);
+    }
+    try {
+      return new Reader(buffer).read();
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+      throw new IllegalArgumentException("Corrupt mcp tree snapshot", ex);
+    }
+  }
+
+  private static final class Writer {
+
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<McpField, Integer> fieldIds = new IdentityHashMap<>();
+    private final List<McpField> fields = new ArrayList<>();
+    private final Map<McpMethod, Integer> methodIds = new IdentityHashMap<>();
+    private final List<McpMethod> methods = new ArrayList<>();
+    private final Map<McpClass, Integer> classIds = new IdentityHashMap<>();
+    private final List<McpClass> classes = new ArrayList<>();
+    private final Bytes body = new Bytes();
+
+    void write(McpTree tree, OutputStream out) throws IOException {
+      // collect everything reachable, including members only left in the indices
+      for (McpClass mcpClass : tree.getObfMap().values()) {
+        add(mcpClass);
+      }
+      for (McpClass mcpClass : tree.getSrgMap().values()) {
+        add(mcpClass);
+      }
+      tree.getFieldIndex().forEach((key, field) -> add(fieldIds, fields, field));
+      tree.getMethodIndex().forEach((key, method) -> add(methodIds, methods, method));
+
+      body.varint(fields.size());
+      for (McpField field : fields) {
+        writeMapped(field);
+        string(field.getDescriptor("official"));
+      }
+      body.varint(methods.size());
+      for (McpMethod method : methods) {
+        writeMapped(method);
+        string(method.getDescriptor("official"));
+        body.write(method.hasStaticModifier() ? 1 : 0);
+        body.varint(method.getMcpParams().size());
+        for (McpParam param : method.getMcpParams().values()) {
+          body.varint(param.getLocalVariableIndex());
+          string(param.getSrg());
+          writeNames(param);
+        }
+      }
+      body.varint(classes.size());
+      for (McpClass mcpClass : classes) {
+        writeMapped(mcpClass);
+        body.varint(mcpClass.getMcpFields().size());
+        for (McpField field : mcpClass.getMcpFields()) {
+          body.varint(fieldIds.get(field));
+        }
+        body.varint(mcpClass.getMcpMethods().size());
+        for (McpMethod method : mcpClass.getMcpMethods()) {
+          body.varint(methodIds.get(method));
+        }
+      }
+
+      writeClassMap(tree.getObfMap());
+      writeClassMap(tree.getSrgMap());
+      writeIndex(tree.getFieldIndex(), fieldIds);
+      writeIndex(tree.getMethodIndex(), methodIds);
+      body.varint(tree.getSrgToObf().size());
+      for (Map.Entry<String, String> entry : tree.getSrgToObf().entrySet()) {
+        string(entry.getKey());
+        string(entry.getValue());
+      }
+
+      Bytes head = new Bytes();
+      head.int32(MAGIC);
+      head.int32(FORMAT_VERSION);
+      head.write(tree.isFrozen() ? FROZEN : 0);
+      head.varint(tree.getSyntheticClassCount());
+      Bytes table = new Bytes();
+      for (String string : strings) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        table.varint(bytes.length);
+        table.write(bytes, 0, bytes.length);
+      }
+      head.varint(strings.size());
+      head.varint(table.size());
+      head.writeTo(out);
+      table.writeTo(out);
+      body.writeTo(out);
+    }
+
+    private void add(McpClass mcpClass) {
+      if (add(classIds, classes, mcpClass)) {
+        for (McpField field : mcpClass.getMcpFields()) {
+          add(fieldIds, fields, field);
+        }
+        for (McpMethod method : mcpClass.getMcpMethods()) {
+          add(methodIds, methods, method);
+        }
+      }
+    }
+
+    private static <T> boolean add(Map<T, Integer> ids, List<T> list, T value) {
+      if (ids.containsKey(value)) {
+        return false;
+      }
+      ids.put(value, list.size());
+      list.add(value);
+      return true;
+    }
+
+    private void writeMapped(McpMapped mapped) {
+      string(mapped.getObf());
+      string(mapped.getSrg());
+      writeNames(mapped);
+    }
+
+    private void writeNames(McpMapped mapped) {
+      nullableString(mapped.getIntermediary());
+      // an unset mcp name reads as the srg name, so it is stored as such
+      nullableString(mapped.getMcp().equals(mapped.getSrg()) ? null : mapped.getMcp());
+      nullableString(mapped.getComment());
+    }
+
+    private void writeClassMap(Map<String, McpClass> map) {
+      body.varint(map.size());
+      for (McpClass mcpClass : map.values()) {
+        body.varint(classIds.get(mcpClass));
+      }
+    }
+
+    private <T> void writeIndex(SrgIndex<T> index, Map<T, Integer> ids) {
+      body.varint(index.size());
+      index.forEach((key, value) -> {
+        string(key);
+        body.varint(ids.get(value));
+      });
+    }
+
+    private void string(String value) {
+      body.varint(id(value));
+    }
+
+    private void nullableString(@Nullable String value) {
+      body.varint(value == null ? 0 : id(value) + 1);
+    }
+
+    private int id(String value) {
+      @Nullable Integer ret = stringIds.get(value);
+      if (ret == null) {
+        ret = strings.size();
+        stringIds.put(value, ret);
+        strings.add(value);
+      }
+      return ret;
+    }
+  }
+
+  private static final class Bytes extends ByteArrayOutputStream {
+
+    Bytes() {
+      super(8192);
+    }
+
+    void varint(int value) {
+      while ((value & ~0x7F) != 0) {
+        write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      write(value);
+    }
+
+    void int32(int value) {
+      write(value >>> 24);
+      write(value >>> 16);
+      write(value >>> 8);
+      write(value);
+    }
+  }
+
+  private static final class Reader {
+
+    private final ByteBuffer buffer;
+    private final McpTree tree = new McpTree();
+    private final StringPool pool = tree.getStringPool();
+    private final DescriptorCache descriptors = tree.getDescriptorCache();
+    private final boolean frozen;
+    private final String[] strings;
+    private final boolean[] pooled;
+    private McpField[] fields = new McpField[0];
+    private McpMethod[] methods = new McpMethod[0];
+    private McpClass[] classes = new McpClass[0];
+
+    Reader(ByteBuffer buffer) {
+      this.buffer = buffer;
+      this.frozen = (buffer.get() & FROZEN) != 0;
+      tree.setSyntheticClassCount(varint());
+      this.strings = new String[varint()];
+      this.pooled = new boolean[strings.length];
+      byte[] table = new byte[varint()];
+      buffer.get(table);
+      int offset = 0;
+      for (int i = 0; i < strings.length; i++) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+          b = table[offset++];
+          length |= (b & 0x7F) << shift;
+          shift += 7;
+        } while (b < 0);
+        strings[i] = new String(table, offset, length, StandardCharsets.UTF_8);
+        offset += length;
+      }
+    }
+
+    McpTree read() {
+      fields = new McpField[varint()];
+      for (int i = 0; i < fields.length; i++) {
+        String obf = pooled();
+        String srg = string();
+        @Nullable String intermediary = nullablePooled();
+        @Nullable String mcp = nullablePooled();
+        @Nullable String comment = nullableString();
+        fields[i] = restore(new McpField(obf, srg, pooled(), descriptors), intermediary, mcp, comment);
+      }
+      methods = new McpMethod[varint()];
+      for (int i = 0; i < methods.length; i++) {
+        String obf = pooled();
+        String srg = string();
+        @Nullable String intermediary = nullablePooled();
+        @Nullable String mcp = nullablePooled();
+        @Nullable String comment = nullableString();
+        McpMethod method = restore(new McpMethod(obf, srg, pooled(), descriptors), intermediary, mcp, comment);
+        method.setStaticModifier(buffer.get() != 0);
+        for (int j = varint(); j > 0; j--) {
+          int index = varint();
+          McpParam param = new McpParam(index, string());
+          restoreNames(param);
+          method.getMcpParams().put(index, param);
+        }
+        methods[i] = method;
+      }
+      classes = new McpClass[varint()];
+      for (int i = 0; i < classes.length; i++) {
+        String obf = pooled();
+        String srg = string();
+        McpClass mcpClass = restore(new McpClass(obf, srg, descriptors), nullablePooled(), nullablePooled(),
+            nullableString());
+        for (int j = varint(); j > 0; j--) {
+          mcpClass.addField(fields[varint()]);
+        }
+        for (int j = varint(); j > 0; j--) {
+          mcpClass.addMethod(methods[varint()]);
+        }
+        classes[i] = mcpClass;
+      }
+
+      for (int i = varint(); i > 0; i--) {
+        McpClass mcpClass = classes[varint()];
+        tree.getObfMap().put(mcpClass.getObf(), mcpClass);
+      }
+      for (int i = varint(); i > 0; i--) {
+        McpClass mcpClass = classes[varint()];
+        tree.getSrgMap().put(mcpClass.getSrg(), mcpClass);
+      }
+      for (int i = varint(); i > 0; i--) {
+        tree.getFieldIndex().put(string(), fields[varint()]);
+      }
+      for (int i = varint(); i > 0; i--) {
+        tree.getMethodIndex().put(string(), methods[varint()]);
+      }
+      for (int i = varint(); i > 0; i--) {
+        tree.getSrgToObf().put(string(), string());
+      }
+      if (buffer.hasRemaining()) {
+        throw new IllegalArgumentException("Trailing bytes after mcp tree snapshot");
+      }
+      return frozen ? tree.freeze() : tree;
+    }
+
+    private void restoreNames(McpMapped mapped) {
+      restore(mapped, nullablePooled(), nullablePooled(), nullableString());
+    }
+
+    private static <T extends McpMapped> T restore(T mapped, @Nullable String intermediary, @Nullable String mcp,
+        @Nullable String comment) {
+      if (intermediary != null) {
+        mapped.setIntermediary(intermediary);
+      }
+      if (mcp != null) {
+        mapped.setMcp(mcp);
+      }
+      if (comment != null) {
+        mapped.setComment(comment);
+      }
+      return mapped;
+    }
+
+    private String string() {
+      return strings[varint()];
+    }
+
+    private @Nullable String nullableString() {
+      int id = varint();
+      return id == 0 ? null : strings[id - 1];
+    }
+
+    // like the loaders, only pool the names and descriptors that repeat, not srg names or comments
+    private String pooled() {
+      return pool(varint());
+    }
+
+    private @Nullable String nullablePooled() {
+      int id = varint();
+      return id == 0 ? null : pool(id - 1);
+    }
+
+    private String pool(int id) {
+      if (!pooled[id]) {
+        strings[id] = pool.intern(strings[id]);
+        pooled[id] = true;
+      }
+      return strings[id];
+    }
+
+    private int varint() {
+      int ret = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = buffer.get();
+        ret |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return ret;
+    }
+  }
+}
@@ -0,0 +1,314 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Looks up members by srg id, like {@code func_71410_x} or {@code field_150350_a}.
+ *
+ * <p>Only the id part, such as {@code func_71410}, identifies a member. Numeric ids are parsed in
+ * place and kept in open-addressing int tables, one for plain ids and one for constructor ids like
+ * {@code func_i123}, so lookups neither split nor allocate. Anything else, like {@code equals}, goes to
+ * a string keyed map.</p>
+ *
+ * <p>Lookups are lock-free; writes lock the table they go to.</p>
+ */
+final class SrgIndex<T> {
+
+  private static final int MAX_DIGITS = 9; // always fits an int
+
+  private final String prefix;
+  private final IntTable<T> numbered = new IntTable<>();
+  private final IntTable<T> constructors = new IntTable<>();
+  private final Map<String, T> named = new ConcurrentHashMap<>();
+
+  /**
+   * @param prefix the prefix of numeric ids, like {@code func_}
+   */
+  SrgIndex(String prefix) {
+    this.prefix = prefix;
+  }
+
+  @Nullable T get(String srg) {
+    if (!srg.startsWith(prefix)) {
+      return named.get(fixName(srg));
+    }
+    int start = prefix.length();
+    return getById(srg, start, idEnd(srg, start));
+  }
+
+  /**
+   * Looks up a member by the id part of a name, like {@code 71410} or {@code i123} in
+   * {@code p_71410_1_}.
+   */
+  @Nullable T getById(String s, int start, int end) {
+    if (start < end && s.charAt(start) == 'i') {
+      int id = parseId(s, start + 1, end);
+      if (id >= 0) {
+        return constructors.get(id);
+      }
+    } else {
+      int id = parseId(s, start, end);
+      if (id >= 0) {
+        return numbered.get(id);
+      }
+    }
+    return named.get(prefix.concat(s.substring(start, end)));
+  }
+
+  void put(String srg, T value) {
+    if (srg.startsWith(prefix)) {
+      int start = prefix.length();
+      int end = idEnd(srg, start);
+      if (start < end && srg.charAt(start) == 'i') {
+        int id = parseId(srg, start + 1, end);
+        if (id >= 0) {
+          constructors.put(id, value);
+          return;
+        }
+      } else {
+        int id = parseId(srg, start, end);
+        if (id >= 0) {
+          numbered.put(id, value);
+          return;
+        }
+      }
+    }
+    named.put(fixName(srg), value);
+  }
+
+  T computeIfAbsent(String srg, Supplier<? extends T> factory) {
+    if (srg.startsWith(prefix)) {
+      int start = prefix.length();
+      int end = idEnd(srg, start);
+      if (start < end && srg.charAt(start) == 'i') {
+        int id = parseId(srg, start + 1, end);
+        if (id >= 0) {
+          return constructors.computeIfAbsent(id, factory);
+        }
+      } else {
+        int id = parseId(srg, start, end);
+        if (id >= 0) {
+          return numbered.computeIfAbsent(id, factory);
+        }
+      }
+    }
+    return named.computeIfAbsent(fixName(srg), s -> factory.get());
+  }
+
+  int size() {
+    return numbered.size() + constructors.size() + named.size();
+  }
+
+  void clear() {
+    numbered.clear();
+    constructors.clear();
+    named.clear();
+  }
+
+  /**
+   * Passes every entry to an action. Keys are in a canonical form that {@link #put} maps back to the
+   * same slot, like {@code func_71410}, {@code func_i123} or {@code equals}.
+   */
+  void forEach(BiConsumer<String, ? super T> action) {
+    numbered.forEach((value, id) -> action.accept(prefix + id, value));
+    constructors.forEach((value, id) -> action.accept(prefix + "i" + id, value));
+    named.forEach(action);
+  }
+
+  private static int idEnd(String s, int start) {
+    int end = s.indexOf('_', start);
+    return end < 0 ? s.length() : end;
+  }
+
+  /**
+   * Parses a non-negative id, or returns -1 if the range is not a canonical decimal number that fits
+   * the tables. Leading zeros are rejected so that distinct names never share an id.
+   */
+  static int parseId(String s, int start, int end) {
+    if (end - start > 1 && s.charAt(start) == '0') {
+      return -1;
+    }
+    return parseDigits(s, start, end);
+  }
+
+  /**
+   * Parses a non-negative decimal number of at most 9 digits, or returns -1 if the range is not one.
+   */
+  static int parseDigits(String s, int start, int end) {
+    int length = end - start;
+    if (length <= 0 || length > MAX_DIGITS) {
+      return -1;
+    }
+    int ret = 0;
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      ret = ret * 10 + (c - '0');
+    }
+    return ret;
+  }
+
+  // keeps the first two underscore separated parts, like func_71410 from func_71410_x
+  private static String fixName(String original) {
+    int first = original.indexOf('_');
+    if (first < 0) {
+      return original;
+    }
+    int second = original.indexOf('_', first + 1);
+    return second < 0 ? original : original.substring(0, second);
+  }
+
+  private static final class IntTable<T> {
+
+    private volatile Table<T> table = new Table<>(256);
+    private int size;
+
+    @Nullable T get(int key) {
+      @Nullable T ret = table.get(key);
+      if (ret != null) {
+        return ret;
+      }
+      // a miss may race with a put, so confirm under the lock
+      synchronized (this) {
+        return table.get(key);
+      }
+    }
+
+    synchronized void put(int key, T value) {
+      if (table.put(key, value)) {
+        grow();
+      }
+    }
+
+    synchronized T computeIfAbsent(int key, Supplier<? extends T> factory) {
+      @Nullable T ret = table.get(key);
+      if (ret == null) {
+        ret = factory.get();
+        if (table.put(key, ret)) {
+          grow();
+        }
+      }
+      return ret;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized void clear() {
+      table = new Table<>(256);
+      size = 0;
+    }
+
+    synchronized void forEach(ObjIntConsumer<? super T> action) {
+      Table<T> current = table;
+      for (int i = 0; i < current.capacity(); i++) {
+        int key = current.keys.get(i);
+        if (key != Table.EMPTY) {
+          action.accept(current.values.get(i), key);
+        }
+      }
+    }
+
+    private void grow() {
+      Table<T> current = table;
+      if (++size * 2 <= current.capacity()) {
+        return;
+      }
+      Table<T> bigger = new Table<>(current.capacity() * 2);
+      for (int i = 0; i < current.capacity(); i++) {
+        int key = current.keys.get(i);
+        if (key != Table.EMPTY) {
+          bigger.put(key, current.values.get(i));
+        }
+      }
+      table = bigger; // readers still on the old table fall back to the lock on a miss
+    }
+  }
+
+  private static final class Table<T> {
+
+    static final int EMPTY = -1;
+
+    // both are read without locks; a value is set before its key, so a reader that sees a key also
+    // sees its value fully built
+    final AtomicIntegerArray keys;
+    final AtomicReferenceArray<T> values;
+
+    Table(int capacity) {
+      keys = new AtomicIntegerArray(capacity);
+      for (int i = 0; i < capacity; i++) {
+        keys.set(i, EMPTY);
+      }
+      values = new AtomicReferenceArray<>(capacity);
+    }
+
+    int capacity() {
+      return keys.length();
+    }
+
+    @Nullable T get(int key) {
+      int slot = slot(key);
+      return keys.get(slot) == key ? values.get(slot) : null;
+    }
+
+    /**
+     * @return whether a new key was added
+     */
+    boolean put(int key, T value) {
+      int slot = slot(key);
+      values.set(slot, value);
+      if (keys.get(slot) == key) {
+        return false;
+      }
+      keys.set(slot, key);
+      return true;
+    }
+
+    private int slot(int key) {
+      int mask = keys.length() - 1;
+      int h = key * 0x9E3779B9;
+      for (int i = (h ^ (h >>> 16)) & mask; ; i = (i + 1) & mask) {
+        int k = keys.get(i);
+        if (k == key || k == EMPTY) {
+          return i;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.model;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An intern pool for strings that repeat across a mapping set, such as obfuscated names and
+ * descriptors.
+ *
+ * <p>Strings can be looked up straight from a char range, so parsers only allocate a string the
+ * first time a token is seen. The pool is thread-safe, and counts hits and misses so its benefit can
+ * be reported.</p>
+ */
+public final class StringPool {
+
+  private @Nullable String[] table = new String[1024];
+  private int size;
+  private long hits;
+
+  public synchronized String intern(String value) {
+    int hash = value.hashCode();
+    int mask = table.length - 1;
+    for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+      @Nullable String existing = table[i];
+      if (existing == null) {
+        insert(i, value);
+        return value;
+      }
+      if (existing.hashCode() == hash && existing.equals(value)) {
+        hits++;
+        return existing;
+      }
+    }
+  }
+
+  public synchronized String intern(char[] chars, int offset, int length) {
+    int hash = 0;
+    for (int j = offset, end = offset + length; j < end; j++) {
+      hash = 31 * hash + chars[j];
+    }
+    int mask = table.length - 1;
+    for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+      @Nullable String existing = table[i];
+      if (existing == null) {
+        String value = new String(chars, offset, length);
+        insert(i, value);
+        return value;
+      }
+      if (existing.hashCode() == hash && contentEquals(existing, chars, offset, length)) {
+        hits++;
+        return existing;
+      }
+    }
+  }
+
+  /**
+   * Drops all strings and counts.
+   */
+  public synchronized void clear() {
+    table = new String[1024];
+    size = 0;
+    hits = 0;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Returns how many lookups found an existing string.
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns how many lookups added a new string. This is also the number of strings in the pool.
+   */
+  public synchronized long getMisses() {
+    return size;
+  }
+
+  /**
+   * Returns the share of lookups that found an existing string, or 0 if there were none.
+   */
+  public synchronized double getHitRate() {
+    long lookups = hits + size;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("StringPool[size=%d, hits=%d, hit rate=%.1f%%]", size, hits, getHitRate() * 100);
+  }
+
+  private void insert(int slot, String value) {
+    table[slot] = value;
+    if (++size * 2 > table.length) {
+      rehash();
+    }
+  }
+
+  private void rehash() {
+    @Nullable String[] old = table;
+    @Nullable String[] grown = new String[old.length * 2];
+    int mask = grown.length - 1;
+    for (@Nullable String value : old) {
+      if (value == null) {
+        continue;
+      }
+      int i = mix(value.hashCode()) & mask;
+      while (grown[i] != null) {
+        i = (i + 1) & mask;
+      }
+      grown[i] = value;
+    }
+    table = grown;
+  }
+
+  private static boolean contentEquals(String value, char[] chars, int offset, int length) {
+    if (value.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (value.charAt(i) != chars[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
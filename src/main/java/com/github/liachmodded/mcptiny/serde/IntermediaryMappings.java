@@ -0,0 +1,245 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.serde;
+
+import com.github.liachmodded.mcptiny.model.McpMethod;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The official to intermediary names of an intermediary tiny v2 file.
+ *
+ * <p>Only the {@code official} and {@code intermediary} columns of classes, fields and methods are
+ * read; parameters, local variables, comments and other namespaces are skipped without being split.
+ * Members are kept in per-class hash tables keyed by official name, and for methods, descriptor.</p>
+ */
+public final class IntermediaryMappings {
+
+  private final Map<String, ClassEntry> classes = new HashMap<>();
+
+  private IntermediaryMappings() {}
+
+  /**
+   * Reads a tiny v2 file whose first namespace is {@code official}.
+   *
+   * @throws MappingFormatException if the file is malformed or lacks either namespace
+   */
+  public static IntermediaryMappings read(BufferedReader reader) throws IOException {
+    IntermediaryMappings ret = new IntermediaryMappings();
+    @Nullable String header = reader.readLine();
+    if (header == null || !header.startsWith("tiny\t2\t")) {
+      throw new MappingFormatException(1, 1, "expected a tiny v2 header");
+    }
+    String[] parts = header.split("\t");
+    List<String> namespaces = Arrays.asList(parts).subList(3, parts.length);
+    int official = namespaces.indexOf("official");
+    int intermediary = namespaces.indexOf("intermediary");
+    if (official != 0 || intermediary < 0) {
+      throw new MappingFormatException(1, 1, "expected official as the first namespace and an intermediary namespace, got "
+          + namespaces);
+    }
+
+    boolean escaped = false;
+    boolean inHeader = true;
+    @MonotonicNonNull ClassEntry current = null;
+    int lineNumber = 1;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.isEmpty()) {
+        continue;
+      }
+      if (line.charAt(0) != '\t') {
+        inHeader = false;
+        if (!line.startsWith("c\t")) {
+          continue; // unknown top level section
+        }
+        // c <names>
+        String obf = column(line, 1 + official, escaped, lineNumber);
+        String name = column(line, 1 + intermediary, escaped, lineNumber);
+        current = new ClassEntry(name.isEmpty() ? obf : name);
+        ret.classes.put(obf, current);
+        continue;
+      }
+      if (inHeader) {
+        if (line.equals("\tescaped-names")) {
+          escaped = true;
+        }
+        continue;
+      }
+      if (line.length() < 3 || line.charAt(1) == '\t' || line.charAt(2) != '\t') {
+        continue; // parameters, local variables and comments
+      }
+      char kind = line.charAt(1);
+      if (kind != 'f' && kind != 'm') {
+        continue;
+      }
+      if (current == null) {
+        throw new MappingFormatException(lineNumber, 1, "member before any class");
+      }
+      // f|m <official desc> <names>
+      String desc = column(line, 1, escaped, lineNumber);
+      String obf = column(line, 2 + official, escaped, lineNumber);
+      String name = column(line, 2 + intermediary, escaped, lineNumber);
+      if (name.isEmpty()) {
+        name = obf;
+      }
+      if (kind == 'f') {
+        current.addField(obf, desc, name);
+      } else {
+        current.addMethod(obf, desc, name);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Gets a column of a tab separated line, not counting the leading indentation.
+   */
+  private static String column(String line, int index, boolean escaped, int lineNumber) {
+    int start = 0;
+    while (line.charAt(start) == '\t') {
+      start++;
+    }
+    for (int i = 0; i < index; i++) {
+      start = line.indexOf('\t', start) + 1;
+      if (start == 0) {
+        throw new MappingFormatException(lineNumber, line.length() + 1, "expected at least " + (index + 1) + " columns");
+      }
+    }
+    int end = line.indexOf('\t', start);
+    String ret = line.substring(start, end < 0 ? line.length() : end);
+    return escaped ? unescape(ret, lineNumber) : ret;
+  }
+
+  private static String unescape(String value, int lineNumber) {
+    int next = value.indexOf('\\');
+    if (next < 0) {
+      return value;
+    }
+    StringBuilder ret = new StringBuilder(value.length());
+    int start = 0;
+    while (next >= 0) {
+      ret.append(value, start, next);
+      if (next + 1 == value.length()) {
+        throw new MappingFormatException(lineNumber, 1, "dangling escape in \"" + value + "\"");
+      }
+      switch (value.charAt(next + 1)) {
+        case '\\':
+          ret.append('\\');
+          break;
+        case 'n':
+          ret.append('\n');
+          break;
+        case 'r':
+          ret.append('\r');
+          break;
+        case 't':
+          ret.append('\t');
+          break;
+        case '0':
+          ret.append('\0');
+          break;
+        default:
+          throw new MappingFormatException(lineNumber, 1, "unknown escape in \"" + value + "\"");
+      }
+      start = next + 2;
+      next = value.indexOf('\\', start);
+    }
+    return ret.append(value, start, value.length()).toString();
+  }
+
+  public @Nullable ClassEntry getClass(String obf) {
+    return classes.get(obf);
+  }
+
+  public int getClassCount() {
+    return classes.size();
+  }
+
+  /**
+   * The intermediary names of a class and its members.
+   */
+  public static final class ClassEntry {
+
+    private final String intermediary;
+    // created on first use, many classes have no fields or no methods
+    private @Nullable Map<String, String> fieldNames;
+    private @Nullable Map<String, String> fieldDescs;
+    private @Nullable Map<String, String> methodNames;
+
+    ClassEntry(String intermediary) {
+      this.intermediary = intermediary;
+    }
+
+    void addField(String obf, String desc, String name) {
+      if (fieldNames == null || fieldDescs == null) {
+        fieldNames = new HashMap<>();
+        fieldDescs = new HashMap<>();
+      }
+      if (fieldNames.putIfAbsent(obf, name) == null) {
+        fieldDescs.put(obf, desc);
+      }
+    }
+
+    void addMethod(String obf, String desc, String name) {
+      if (methodNames == null) {
+        methodNames = new HashMap<>();
+      }
+      methodNames.putIfAbsent(McpMethod.signature(obf, desc), name);
+    }
+
+    public String getIntermediary() {
+      return intermediary;
+    }
+
+    /**
+     * Gets the intermediary name of a field by official name. If several fields share the name, the first
+     * one wins.
+     */
+    public @Nullable String getFieldName(String obf) {
+      return fieldNames == null ? null : fieldNames.get(obf);
+    }
+
+    /**
+     * Gets the official descriptor of a field by official name.
+     */
+    public @Nullable String getFieldDescriptor(String obf) {
+      return fieldDescs == null ? null : fieldDescs.get(obf);
+    }
+
+    public @Nullable String getMethodName(String obf, String obfDesc) {
+      return methodNames == null ? null : methodNames.get(McpMethod.signature(obf, obfDesc));
+    }
+  }
+}
@@ -26,90 +26,112 @@
  */
 package com.github.liachmodded.mcptiny.serde;
 
+import com.github.liachmodded.mcptiny.jfr.LoaderEvent;
 import com.github.liachmodded.mcptiny.model.McpClass;
 import com.github.liachmodded.mcptiny.model.McpField;
 import com.github.liachmodded.mcptiny.model.McpMethod;
 import com.github.liachmodded.mcptiny.model.McpTree;
+import com.github.liachmodded.mcptiny.model.StringPool;
+import com.github.liachmodded.mcptiny.serde.IntermediaryMappings.ClassEntry;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
-import net.fabricmc.mapping.tree.ClassDef;
-import net.fabricmc.mapping.tree.FieldDef;
-import net.fabricmc.mapping.tree.MethodDef;
-import net.fabricmc.mapping.tree.TinyMappingFactory;
-import net.fabricmc.mapping.tree.TinyTree;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public final class IntermediaryWorker {
 
   private IntermediaryWorker() {}
 
   public static void addIntermediaryAndFixFieldDesc(McpTree mcpTree, File intV2File) {
-    try (BufferedReader reader = Files.newBufferedReader(intV2File.toPath())) {
-      TinyTree tree = TinyMappingFactory.load(reader);
-      Map<String, ClassDef> defaultDefs = tree.getDefaultNamespaceClassMap();
+    try (InputStream in = Files.newInputStream(intV2File.toPath())) {
+      addIntermediaryAndFixFieldDesc(mcpTree, in);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
 
-      Iterator<Entry<String, McpClass>> iterator = mcpTree.getObfMap().entrySet().iterator();
-      while (iterator.hasNext()) {
-        final Entry<String, McpClass> entry = iterator.next();
-        String key = entry.getKey();
-        McpClass mcpClass = entry.getValue();
+  public static void addIntermediaryAndFixFieldDesc(McpTree mcpTree, InputStream in) {
+    addIntermediaryAndFixFieldDesc(mcpTree, readIntermediary(in));
+  }
 
-        ClassDef classDef = defaultDefs.get(key);
-        if (classDef == null) {
-          if (key.indexOf('$') != -1) {
-            // broken inner class ctor etc
-            iterator.remove();
-            mcpTree.getSrgMap().remove(mcpClass.getSrg());
-            continue;
-          }
-          throw new RuntimeException("Failed to update intermediary for class " + mcpClass.getSrg());
-        }
+  /**
+   * Reads an intermediary v2 file without touching any mcp tree, so it can run concurrently with other
+   * loading.
+   */
+  public static IntermediaryMappings readIntermediary(InputStream in) {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.READ_INTERMEDIARY);
+    CountingInputStream counted = new CountingInputStream(in);
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(counted, StandardCharsets.UTF_8))) {
+      IntermediaryMappings mappings = IntermediaryMappings.read(reader);
+      event.commit(counted.getCount(), mappings.getClassCount(), 0);
+      return mappings;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
 
-        mcpClass.setIntermediary(classDef.getName("intermediary"));
+  public static void addIntermediaryAndFixFieldDesc(McpTree mcpTree, IntermediaryMappings intermediary) {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.MERGE_INTERMEDIARY);
+    StringPool strings = mcpTree.getStringPool();
+    int classes = 0;
+    int dropped = 0;
 
-        for (McpField mcpField : mcpClass.getMcpFields()) {
-          String obf = mcpField.getObf();
-          boolean descUpdated = false;
-          for (FieldDef fieldDef : classDef.getFields()) {
-            if (Objects.equals(fieldDef.getName("official"), obf)) {
-              mcpField.setIntermediary(fieldDef.getName("intermediary"));
-              mcpField.setObfDesc(fieldDef.getDescriptor("official"));
-              descUpdated = true;
-              break;
-            }
-          }
+    Iterator<Entry<String, McpClass>> iterator = mcpTree.getObfMap().entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Entry<String, McpClass> entry = iterator.next();
+      String key = entry.getKey();
+      McpClass mcpClass = entry.getValue();
+      classes++;
 
-          if (!descUpdated) {
-            throw new RuntimeException("Failed to update intermediary and desc for field " + mcpField.getSrg());
-          }
+      @Nullable ClassEntry classEntry = intermediary.getClass(key);
+      if (classEntry == null) {
+        if (key.indexOf('$') != -1) {
+          // broken inner class ctor etc
+          iterator.remove();
+          mcpTree.getSrgMap().remove(mcpClass.getSrg());
+          dropped++;
+          continue;
         }
+        throw new RuntimeException("Failed to update intermediary for class " + mcpClass.getSrg());
+      }
 
-        for (McpMethod mcpMethod : mcpClass.getMcpMethods()) {
-          String obf = mcpMethod.getObf();
-          if (Objects.equals("<init>", obf) || Objects.equals("<clinit>", obf)) {
-            mcpMethod.setIntermediary(obf);
-            continue; // skip initializers
-          }
-          if (mcpMethod.getIntermediary() != null) {
-            continue; // inherited etc
-          }
+      mcpClass.setIntermediary(strings.intern(classEntry.getIntermediary()));
 
-          for (MethodDef methodDef : classDef.getMethods()) {
-            if (Objects.equals(methodDef.getName("official"), obf) && Objects.equals(methodDef.getDescriptor("official"), mcpMethod.getDescriptor("official"))) {
-              mcpMethod.setIntermediary(methodDef.getName("intermediary"));
-              break;
-            }
-          }
+      for (McpField mcpField : mcpClass.getMcpFields()) {
+        @Nullable String name = classEntry.getFieldName(mcpField.getObf());
+        @Nullable String desc = classEntry.getFieldDescriptor(mcpField.getObf());
+        if (name == null || desc == null) {
+          throw new RuntimeException("Failed to update intermediary and desc for field " + mcpField.getSrg());
+        }
+        mcpField.setIntermediary(strings.intern(name));
+        mcpField.setObfDesc(strings.intern(desc));
+      }
+
+      for (McpMethod mcpMethod : mcpClass.getMcpMethods()) {
+        String obf = mcpMethod.getObf();
+        if (Objects.equals("<init>", obf) || Objects.equals("<clinit>", obf)) {
+          mcpMethod.setIntermediary(obf);
+          continue; // skip initializers
+        }
+        if (mcpMethod.getIntermediary() != null) {
+          continue; // inherited etc
+        }
+
+        @Nullable String name = classEntry.getMethodName(obf, mcpMethod.getDescriptor("official"));
+        if (name != null) {
+          mcpMethod.setIntermediary(strings.intern(name));
         }
       }
-    } catch (IOException ex) {
-      throw new UncheckedIOException(ex);
     }
+    event.commit(0, classes, dropped);
   }
 }
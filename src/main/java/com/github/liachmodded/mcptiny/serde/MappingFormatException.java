@@ -0,0 +1,63 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.serde;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Thrown when a mapping file is malformed or cannot be applied, with the position of the problem.
+ */
+public final class MappingFormatException extends IllegalArgumentException {
+
+  private static final long serialVersionUID = 1L;
+  private final int line;
+  private final int column;
+
+  public MappingFormatException(int line, int column, String message) {
+    this(line, column, message, null);
+  }
+
+  public MappingFormatException(int line, int column, String message, @Nullable Throwable cause) {
+    super("line " + line + ", column " + column + ": " + message, cause);
+    this.line = line;
+    this.column = column;
+  }
+
+  /**
+   * Gets the 1-based line number of the problem.
+   */
+  public int getLine() {
+    return line;
+  }
+
+  /**
+   * Gets the 1-based column number of the problem.
+   */
+  public int getColumn() {
+    return column;
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.serde;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A streaming reader for MCP snapshot csv files, such as {@code methods.csv} and {@code params.csv}.
+ *
+ * <p>The format is RFC 4180 csv with a header row: fields may be quoted, quotes are escaped by doubling
+ * them, and quoted fields may span lines. Columns are located by their header names, and only the
+ * wanted columns are turned into strings; the rest are skipped in place. Empty lines are ignored.</p>
+ */
+final class McpCsvReader {
+
+  private static final int COMMA = 0;
+  private static final int LINE_END = 1;
+  private static final int END = 2;
+
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private int pos;
+  private int limit;
+  private long offset; // chars before the buffer
+  private long lineStart;
+  private int line = 1;
+  private final StringBuilder spill = new StringBuilder();
+  private @Nullable String value; // the last field read, if it was wanted
+  private boolean lastFieldEmpty; // whether the last field was empty and unquoted
+
+  McpCsvReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Reads the name rows of an MCP snapshot csv.
+   *
+   * @param withComment whether to read the {@code desc} column
+   * @return the rows, in file order
+   */
+  List<McpNameEntry> readNameEntries(boolean withComment) throws IOException {
+    int startLine = line;
+    @Nullable List<String> header = readHeader();
+    if (header == null) {
+      return new ArrayList<>(); // empty file
+    }
+    int srgColumn = header.indexOf("searge");
+    if (srgColumn < 0) {
+      srgColumn = header.indexOf("param");
+    }
+    int nameColumn = header.indexOf("name");
+    int descColumn = withComment ? header.indexOf("desc") : -1;
+    if (srgColumn < 0 || nameColumn < 0 || (withComment && descColumn < 0)) {
+      throw new MappingFormatException(startLine, 1, "unexpected header " + header + ", expected searge or param, name"
+          + (withComment ? " and desc" : ""));
+    }
+
+    int[] columns = withComment ? new int[] {srgColumn, nameColumn, descColumn} : new int[] {srgColumn, nameColumn};
+    @Nullable String[] row = new String[columns.length];
+    List<McpNameEntry> entries = new ArrayList<>();
+    while (true) {
+      startLine = line;
+      if (!readRow(columns, row)) {
+        return entries;
+      }
+      @Nullable String srg = row[0];
+      @Nullable String name = row[1];
+      if (srg == null || name == null) {
+        throw new MappingFormatException(startLine, 1, "missing srg or name column");
+      }
+      @Nullable String comment = withComment ? row[2] : null;
+      entries.add(new McpNameEntry(srg, name, comment == null || comment.isEmpty() ? null : comment));
+    }
+  }
+
+  private @Nullable List<String> readHeader() throws IOException {
+    List<String> header = new ArrayList<>();
+    int end;
+    do {
+      end = readField(true);
+      header.add(String.valueOf(value));
+    } while (end == COMMA);
+    if (end == END && header.size() == 1 && lastFieldEmpty) {
+      return null;
+    }
+    return header;
+  }
+
+  /**
+   * Reads a row, skipping empty lines.
+   *
+   * @param columns the wanted column indices
+   * @param row receives the values of the wanted columns, or {@code null} for missing columns
+   * @return whether a row was read, or {@code false} at the end of input
+   */
+  private boolean readRow(int[] columns, @Nullable String[] row) throws IOException {
+    while (true) {
+      Arrays.fill(row, null);
+      int end;
+      int column = 0;
+      do {
+        int slot = slot(columns, column);
+        end = readField(slot >= 0);
+        if (slot >= 0) {
+          row[slot] = value;
+        }
+        column++;
+      } while (end == COMMA);
+      if (column > 1 || !lastFieldEmpty) {
+        return true;
+      }
+      if (end == END) {
+        return false;
+      }
+    }
+  }
+
+  private static int slot(int[] columns, int column) {
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i] == column) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Reads a field and its terminator. If the field is wanted, its value is left in {@link #value}.
+   *
+   * @return {@link #COMMA}, {@link #LINE_END} or {@link #END}
+   */
+  private int readField(boolean wanted) throws IOException {
+    value = null;
+    if (pos == limit && !fill()) {
+      lastFieldEmpty = true;
+      value = wanted ? "" : null;
+      return END;
+    }
+    if (buffer[pos] == '"') {
+      pos++;
+      lastFieldEmpty = false;
+      return readQuoted(wanted);
+    }
+
+    spill.setLength(0);
+    boolean spilled = false;
+    while (true) {
+      int start = pos;
+      while (pos < limit) {
+        char c = buffer[pos];
+        if (c == ',' || c == '\n' || c == '\r') {
+          lastFieldEmpty = !spilled && pos == start;
+          if (wanted) {
+            value = spilled ? spill.append(buffer, start, pos - start).toString() : new String(buffer, start, pos - start);
+          }
+          return terminator();
+        }
+        pos++;
+      }
+      if (pos > start) {
+        spilled = true;
+        if (wanted) {
+          spill.append(buffer, start, pos - start);
+        }
+      }
+      if (!fill()) {
+        lastFieldEmpty = !spilled;
+        if (wanted) {
+          value = spill.toString();
+        }
+        return END;
+      }
+    }
+  }
+
+  private int readQuoted(boolean wanted) throws IOException {
+    spill.setLength(0);
+    while (true) {
+      if (pos == limit && !fill()) {
+        throw error("unterminated quoted field");
+      }
+      int start = pos;
+      while (pos < limit && buffer[pos] != '"') {
+        if (buffer[pos] == '\n') {
+          newLine(pos + 1);
+        }
+        pos++;
+      }
+      if (wanted) {
+        spill.append(buffer, start, pos - start);
+      }
+      if (pos == limit) {
+        continue;
+      }
+      pos++; // the quote
+      if ((pos < limit || fill()) && buffer[pos] == '"') {
+        pos++;
+        if (wanted) {
+          spill.append('"');
+        }
+        continue;
+      }
+      break;
+    }
+    if (wanted) {
+      value = spill.toString();
+    }
+    // like commons-csv, allow whitespace between the closing quote and the delimiter
+    while (pos < limit || fill()) {
+      char c = buffer[pos];
+      if (c == ',' || c == '\n' || c == '\r') {
+        return terminator();
+      }
+      if (!Character.isWhitespace(c)) {
+        throw error("unexpected character after quoted field");
+      }
+      pos++;
+    }
+    return END;
+  }
+
+  // consumes the comma or line break at pos
+  private int terminator() throws IOException {
+    char c = buffer[pos++];
+    if (c == ',') {
+      return COMMA;
+    }
+    if (c == '\r' && (pos < limit || fill()) && buffer[pos] == '\n') {
+      pos++;
+    }
+    newLine(pos);
+    return LINE_END;
+  }
+
+  private void newLine(int next) {
+    line++;
+    lineStart = offset + next;
+  }
+
+  private boolean fill() throws IOException {
+    offset += limit;
+    pos = 0;
+    limit = 0;
+    int read;
+    while ((read = reader.read(buffer)) == 0) {
+      // retry, a reader may return 0
+    }
+    if (read < 0) {
+      return false;
+    }
+    limit = read;
+    return true;
+  }
+
+  private MappingFormatException error(String message) {
+    return new MappingFormatException(line, (int) (offset + pos - lineStart) + 1, message);
+  }
+}
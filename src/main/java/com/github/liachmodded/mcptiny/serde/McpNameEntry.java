@@ -0,0 +1,60 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.serde;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A row of an MCP snapshot csv, naming one srg field, method or parameter.
+ */
+public final class McpNameEntry {
+
+  private final String srg;
+  private final String name;
+  private final @Nullable String comment;
+
+  public McpNameEntry(String srg, String name, @Nullable String comment) {
+    this.srg = srg;
+    this.name = name;
+    this.comment = comment;
+  }
+
+  public String getSrg() {
+    return srg;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the description of the entry, or {@code null} if it has none.
+   */
+  public @Nullable String getComment() {
+    return comment;
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.serde;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the entries of an input that could not be applied, so the caller can report them in one
+ * line instead of one line each.
+ *
+ * <p>Only the count and the first few entries are kept.</p>
+ */
+public final class MissReport {
+
+  static final int EXAMPLE_LIMIT = 5;
+
+  private final String description;
+  private final List<String> examples = new ArrayList<>(EXAMPLE_LIMIT);
+  private int count;
+
+  /**
+   * @param description what the misses are, like {@code "methods.csv entries without a srg method"}
+   */
+  public MissReport(String description) {
+    this.description = description;
+  }
+
+  public void add(String entry) {
+    if (count++ < EXAMPLE_LIMIT) {
+      examples.add(entry);
+    }
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the first few missed entries, in the order they were added.
+   */
+  public List<String> getExamples() {
+    return Collections.unmodifiableList(examples);
+  }
+
+  @Override
+  public String toString() {
+    return count + " " + description + (count == 0 ? "" : ": " + String.join(", ", examples)
+        + (count > examples.size() ? ", ..." : ""));
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.serde;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import net.fabricmc.mapping.tree.TinyTree;
+
+/**
+ * Writes a tiny tree into a mapping jar, streaming the printed mappings directly into the jar entry.
+ */
+public final class TinyJarWriter {
+
+  public static final String ENTRY_NAME = "mappings/mappings.tiny";
+
+  private TinyJarWriter() {}
+
+  /**
+   * Writes a mapping jar.
+   *
+   * <p>A {@link ZipEntry#STORED stored} entry needs its size and checksum before its data, so the tree
+   * is printed twice in that case, once to measure and once to write.</p>
+   *
+   * @param out the stream to write the jar to
+   * @param tree the tree to print
+   * @param namespaces the namespaces to print
+   * @param method {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+   * @param level the deflater level, only used for deflated entries
+   * @throws IOException if writing fails
+   */
+  public static void write(OutputStream out, TinyTree tree, List<String> namespaces, int method, int level) throws IOException {
+    ZipEntry entry = new ZipEntry(ENTRY_NAME);
+    ZipOutputStream zip = new ZipOutputStream(out);
+    if (method == ZipEntry.STORED) {
+      MeasuringOutputStream measure = new MeasuringOutputStream();
+      TinyPrinter.print(measure, tree, namespaces);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(measure.size);
+      entry.setCompressedSize(measure.size);
+      entry.setCrc(measure.crc.getValue());
+    } else if (method == ZipEntry.DEFLATED) {
+      entry.setMethod(ZipEntry.DEFLATED);
+      zip.setLevel(level);
+    } else {
+      throw new IllegalArgumentException("Unknown zip entry method " + method);
+    }
+
+    zip.putNextEntry(entry);
+    TinyPrinter.print(zip, tree, namespaces);
+    zip.closeEntry();
+    zip.finish();
+  }
+
+  private static final class MeasuringOutputStream extends OutputStream {
+
+    final CRC32 crc = new CRC32();
+    long size;
+
+    @Override
+    public void write(int b) {
+      crc.update(b);
+      size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      crc.update(b, off, len);
+      size += len;
+    }
+  }
+}
@@ -26,10 +26,15 @@
  */
 package com.github.liachmodded.mcptiny.serde;
 
+import com.github.liachmodded.mcptiny.jfr.LoaderEvent;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
 import net.fabricmc.mapping.tree.ClassDef;
+import net.fabricmc.mapping.tree.Descriptored;
 import net.fabricmc.mapping.tree.FieldDef;
 import net.fabricmc.mapping.tree.LocalVariableDef;
 import net.fabricmc.mapping.tree.Mapped;
@@ -38,8 +43,18 @@ import net.fabricmc.mapping.tree.ParameterDef;
 import net.fabricmc.mapping.tree.TinyTree;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+/**
+ * Prints tiny v2 mappings.
+ *
+ * <p>Lines are appended into a reusable char buffer with direct tab and newline writes instead of
+ * going through a formatter. When printing to an {@link OutputStream}, the buffer is encoded to UTF-8
+ * by hand, so printing does not allocate per entry.</p>
+ */
 public final class TinyPrinter {
 
+  private static final int BUFFER_SIZE = 8192;
+  private static final String[] DESCRIBED_NAMESPACES = {"official", "searge", "named"};
+
   private TinyPrinter() {}
 
   public static void print(PrintWriter out, TinyTree tree) {
@@ -48,68 +63,298 @@ public final class TinyPrinter {
   }
 
   public static void print(PrintWriter out, TinyTree tree, List<String> namespaces) {
+    try {
+      print(new WriterEmitter(out), tree, namespaces);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex); // PrintWriter never throws
+    }
+  }
+
+  /**
+   * Prints a tree as UTF-8 to a stream. The stream is flushed but not closed.
+   *
+   * @param out the stream to print to
+   * @param tree the tree to print
+   * @param namespaces the namespaces to print, the first one is used for descriptors
+   * @throws IOException if writing to the stream fails
+   */
+  public static void print(OutputStream out, TinyTree tree, List<String> namespaces) throws IOException {
+    print(new Utf8Emitter(out), tree, namespaces);
+  }
+
+  private static void print(Emitter out, TinyTree tree, List<String> namespaces) throws IOException {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.PRINT_TINY);
+    int classes = 0;
     final String defaultNamespace = namespaces.get(0);
-    out.printf("tiny\t2\t0\t%s\n", String.join("\t", namespaces));
+    out.append("tiny\t2\t0");
+    for (String namespace : namespaces) {
+      out.tab().append(namespace);
+    }
+    out.newLine();
     for (ClassDef clazz : tree.getClasses()) {
-      out.printf("c\t%s\n", collectNames(namespaces, clazz));
+      classes++;
+      out.append('c');
+      appendNames(out, namespaces, null, clazz);
       printComment(out, clazz, 1);
       for (FieldDef field : clazz.getFields()) {
-        out.printf("\tf\t%1$s\t%2$s\n", field.getDescriptor(defaultNamespace), collectNames(namespaces, field));
+        out.append("\tf\t").append(descriptor(defaultNamespace, clazz, field));
+        appendNames(out, namespaces, clazz, field);
         printComment(out, field, 2);
       }
       for (MethodDef method : clazz.getMethods()) {
-        out.printf("\tm\t%1$s\t%2$s\n", method.getDescriptor(defaultNamespace), collectNames(namespaces, method));
+        out.append("\tm\t").append(descriptor(defaultNamespace, clazz, method));
+        appendNames(out, namespaces, clazz, method);
         printComment(out, method, 2);
         for (ParameterDef parameter : method.getParameters()) {
-          out.printf("\t\tp\t%1$d\t%2$s\n", parameter.getLocalVariableIndex(), collectNames(namespaces, parameter));
+          out.append("\t\tp\t").append(parameter.getLocalVariableIndex());
+          appendNames(out, namespaces, method, parameter);
           printComment(out, parameter, 3);
         }
         for (LocalVariableDef parameter : method.getLocalVariables()) {
-          out.printf("\t\tv\t%1$d\t%2$d\t%3$d\t%4$s\n", parameter.getLocalVariableIndex(), parameter.getLocalVariableStartOffset(),
-              parameter.getLocalVariableTableIndex(), collectNames(namespaces, parameter));
+          out.append("\t\tv\t").append(parameter.getLocalVariableIndex())
+              .tab().append(parameter.getLocalVariableStartOffset())
+              .tab().append(parameter.getLocalVariableTableIndex());
+          appendNames(out, namespaces, method, parameter);
           printComment(out, parameter, 3);
         }
       }
     }
+    out.flush();
+    event.commit(out.written, classes, 0);
   }
 
-  private static String collectNames(List<String> namespaces, Mapped mapped) {
-    List<String> names = new ArrayList<>(namespaces.size());
-    for (String namespace : namespaces) {
-      names.add(mapped.getName(namespace));
+  /**
+   * Appends a tab followed by the name in each namespace, then ends the line.
+   *
+   * <p>A missing name fails the print, as a {@code null} in a tiny file would only break its readers.</p>
+   */
+  private static void appendNames(Emitter out, List<String> namespaces, @Nullable Mapped owner, Mapped mapped)
+      throws IOException {
+    for (int i = 0, size = namespaces.size(); i < size; i++) {
+      String namespace = namespaces.get(i);
+      @Nullable String name = mapped.getName(namespace);
+      if (name == null) {
+        throw new IllegalStateException(describe(owner, mapped) + " has no " + namespace + " name");
+      }
+      out.tab().append(name);
+    }
+    out.newLine();
+  }
+
+  private static String descriptor(String namespace, Mapped owner, Descriptored member) {
+    @Nullable String ret = member.getDescriptor(namespace);
+    if (ret == null) {
+      throw new IllegalStateException(describe(owner, member) + " has no " + namespace + " descriptor");
     }
-    return String.join("\t", names);
+    return ret;
+  }
+
+  /**
+   * Describes a member for an error message by a name it is known to have, like its official name, as
+   * the namespace being printed may be the missing one.
+   */
+  private static String describe(@Nullable Mapped owner, Mapped mapped) {
+    String kind = mapped instanceof ClassDef ? "class" : mapped instanceof FieldDef ? "field"
+        : mapped instanceof MethodDef ? "method" : mapped instanceof ParameterDef ? "parameter" : "local variable";
+    String ret = kind + " " + knownName(mapped);
+    return owner == null ? ret : ret + " of " + describe(null, owner);
   }
 
-  private static void printComment(PrintWriter stream, Mapped mapped, int indent) {
+  private static String knownName(Mapped mapped) {
+    for (String namespace : DESCRIBED_NAMESPACES) {
+      try {
+        @Nullable String name = mapped.getName(namespace);
+        if (name != null) {
+          return name;
+        }
+      } catch (RuntimeException ex) {
+        // some trees fail on missing names or namespaces they do not know, try the next one
+      }
+    }
+    return "<unnamed>";
+  }
+
+  private static void printComment(Emitter out, Mapped mapped, int indent) throws IOException {
     @Nullable String comment = mapped.getComment();
     if (comment == null) {
       return;
     }
-    StringBuilder sb = new StringBuilder(comment.length() + indent + 2);
     for (int i = 0; i < indent; i++) {
-      sb.append('\t');
+      out.tab();
+    }
+    out.append('c').tab();
+    for (int i = 0, length = comment.length(); i < length; i++) {
+      char c = comment.charAt(i);
+      switch (c) {
+        case '\\':
+          out.append('\\').append('\\');
+          break;
+        case '\n':
+          out.append('\\').append('n');
+          break;
+        case '\r':
+          out.append('\\').append('r');
+          break;
+        case '\0':
+          out.append('\\').append('0');
+          break;
+        case '\t':
+          out.append('\\').append('t');
+          break;
+        default:
+          out.append(c);
+      }
     }
-    sb.append('c').append('\t');
-    sb.append(escapeComment(comment));
-    stream.println(sb);
+    out.newLine();
   }
 
-  private static String escapeComment(String old) {
-    StringBuilder sb = new StringBuilder(old.length());
-    for (int i = 0; i < old.length(); i++) {
-      char c = old.charAt(i);
-      int t = TO_ESCAPE.indexOf(c);
-      if (t == -1) {
-        sb.append(c);
-      } else {
-        sb.append('\\').append(ESCAPED.charAt(t));
+  private static abstract class Emitter {
+
+    final char[] buffer = new char[BUFFER_SIZE];
+    int pos;
+    long written; // chars for writers, bytes for streams
+
+    final Emitter append(char c) throws IOException {
+      if (pos == buffer.length) {
+        drain();
+      }
+      buffer[pos++] = c;
+      return this;
+    }
+
+    final Emitter append(String s) throws IOException {
+      int length = s.length();
+      int start = 0;
+      while (start < length) {
+        if (pos == buffer.length) {
+          drain();
+        }
+        int count = Math.min(length - start, buffer.length - pos);
+        s.getChars(start, start + count, buffer, pos);
+        pos += count;
+        start += count;
       }
+      return this;
+    }
+
+    final Emitter append(int value) throws IOException {
+      if (value < 0) {
+        if (value == Integer.MIN_VALUE) {
+          return append(Integer.toString(value));
+        }
+        append('-');
+        value = -value;
+      }
+      if (buffer.length - pos < 10) {
+        drain();
+      }
+      int digits = 1;
+      for (int t = value; t >= 10; t /= 10) {
+        digits++;
+      }
+      for (int i = pos + digits - 1; i >= pos; i--) {
+        buffer[i] = (char) ('0' + value % 10);
+        value /= 10;
+      }
+      pos += digits;
+      return this;
+    }
+
+    final Emitter tab() throws IOException {
+      return append('\t');
+    }
+
+    final Emitter newLine() throws IOException {
+      return append('\n');
+    }
+
+    /**
+     * Writes out buffered chars, possibly keeping a trailing incomplete surrogate pair.
+     */
+    abstract void drain() throws IOException;
+
+    abstract void flush() throws IOException;
+  }
+
+  private static final class WriterEmitter extends Emitter {
+
+    private final Writer out;
+
+    WriterEmitter(Writer out) {
+      this.out = out;
+    }
+
+    @Override
+    void drain() throws IOException {
+      out.write(buffer, 0, pos);
+      written += pos;
+      pos = 0;
+    }
+
+    @Override
+    void flush() throws IOException {
+      drain();
+      out.flush();
     }
-    return sb.toString();
   }
 
-  private static final String TO_ESCAPE = "\\\n\r\0\t";
-  private static final String ESCAPED = "\\nr0t";
+  private static final class Utf8Emitter extends Emitter {
+
+    private final OutputStream out;
+    // each char takes at most 3 bytes, surrogate pairs take 4 bytes for 2 chars
+    private final byte[] bytes = new byte[BUFFER_SIZE * 3];
+
+    Utf8Emitter(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    void drain() throws IOException {
+      encode(false);
+    }
+
+    @Override
+    void flush() throws IOException {
+      encode(true);
+      out.flush();
+    }
 
+    private void encode(boolean endOfInput) throws IOException {
+      final char[] chars = buffer;
+      final byte[] bytes = this.bytes;
+      int end = pos;
+      if (!endOfInput && end > 0 && Character.isHighSurrogate(chars[end - 1])) {
+        end--; // wait for the low surrogate
+      }
+      int b = 0;
+      for (int i = 0; i < end; i++) {
+        char c = chars[i];
+        if (c < 0x80) {
+          bytes[b++] = (byte) c;
+        } else if (c < 0x800) {
+          bytes[b++] = (byte) (0xC0 | (c >> 6));
+          bytes[b++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+          int codePoint = Character.toCodePoint(c, chars[++i]);
+          bytes[b++] = (byte) (0xF0 | (codePoint >> 18));
+          bytes[b++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+          bytes[b++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+          bytes[b++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+          bytes[b++] = '?'; // malformed, same replacement as the JDK encoder
+        } else {
+          bytes[b++] = (byte) (0xE0 | (c >> 12));
+          bytes[b++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          bytes[b++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+      out.write(bytes, 0, b);
+      written += b;
+      int remaining = pos - end;
+      if (remaining > 0) {
+        chars[0] = chars[end];
+      }
+      pos = remaining;
+    }
+  }
 }
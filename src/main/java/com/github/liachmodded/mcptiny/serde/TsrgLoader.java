@@ -26,169 +26,361 @@
  */
 package com.github.liachmodded.mcptiny.serde;
 
+import com.github.liachmodded.mcptiny.jfr.LoaderEvent;
 import com.github.liachmodded.mcptiny.model.McpClass;
 import com.github.liachmodded.mcptiny.model.McpField;
 import com.github.liachmodded.mcptiny.model.McpMethod;
 import com.github.liachmodded.mcptiny.model.McpParam;
 import com.github.liachmodded.mcptiny.model.McpTree;
+import com.github.liachmodded.mcptiny.model.StringPool;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.Objects;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public final class TsrgLoader {
 
   public static void loadTsrg(McpTree tree, File file) {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.LOAD_TSRG);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      int lines = loadTsrg(tree, StandardCharsets.UTF_8.decode(channel.map(MapMode.READ_ONLY, 0, size)));
+      event.commit(size, lines, 0);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  public static void loadTsrg(McpTree tree, InputStream in) {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.LOAD_TSRG);
+    try {
+      ByteBuffer bytes = readFully(in);
+      int size = bytes.remaining();
+      int lines = loadTsrg(tree, StandardCharsets.UTF_8.decode(bytes));
+      event.commit(size, lines, 0);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * Parses tsrg by scanning the decoded chars in place, only allocating strings for the names kept in
+   * the tree. Obfuscated names and descriptors repeat a lot and are interned.
+   *
+   * @return the number of lines
+   * @throws MappingFormatException if a line is malformed or cannot be added to the tree
+   */
+  private static int loadTsrg(McpTree tree, CharBuffer buffer) {
+    final char[] chars = buffer.array();
+    final int end = buffer.arrayOffset() + buffer.limit();
+    final int[] tokens = new int[6]; // start and end of up to 3 tokens
+    final StringPool pool = tree.getStringPool();
     @MonotonicNonNull McpClass last = null;
-    try (BufferedReader reader = Files.newBufferedReader(file.toPath())) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        try {
-          if (line.startsWith("\t")) {
-            if (last == null) {
-              throw new IllegalStateException();
+    int lineNumber = 0;
+    int next = buffer.arrayOffset() + buffer.position();
+    while (next < end) {
+      lineNumber++;
+      final int lineStart = next;
+      int lineEnd = lineStart;
+      while (lineEnd < end && chars[lineEnd] != '\n' && chars[lineEnd] != '\r') {
+        lineEnd++;
+      }
+      next = lineEnd + 1;
+      if (lineEnd < end && chars[lineEnd] == '\r' && next < end && chars[next] == '\n') {
+        next++;
+      }
+
+      boolean member = lineEnd > lineStart && chars[lineStart] == '\t';
+      int count = tokenize(chars, member ? lineStart + 1 : lineStart, lineEnd, tokens, member ? 3 : 2, lineNumber, lineStart);
+      try {
+        if (member) {
+          if (last == null) {
+            throw new MappingFormatException(lineNumber, 1, "member before any class");
+          }
+          if (count == 2) { // field
+            if (!rangeEquals(chars, tokens[0], tokens[1], tokens[2], tokens[3])) {
+              tree.makeField(last, intern(pool, chars, tokens, 0), "", token(chars, tokens, 1)); // remapped in field desc fixer
             }
-            String[] parts = line.substring(1).split(" ");
-            switch (parts.length) {
-              case 2: // field
-                if (!Objects.equals(parts[0], parts[1])) {
-                  tree.makeField(last, parts[0], "", parts[1]); // remapped in field desc fixer
-                }
-                break;
-              case 3: // method
-                if (!Objects.equals(parts[0], parts[2])) {
-                  tree.makeOrGetMethod(last, parts[0], parts[1], parts[2]);
-                }
-                break;
-              default:
-                throw new IllegalArgumentException("bad line \"" + line + "");
+          } else if (count == 3) { // method
+            if (!rangeEquals(chars, tokens[0], tokens[1], tokens[4], tokens[5])) {
+              tree.makeOrGetMethod(last, intern(pool, chars, tokens, 0), intern(pool, chars, tokens, 1), token(chars, tokens, 2));
             }
           } else {
-            String[] parts = line.split(" ");
-            if (parts.length != 2) {
-              throw new IllegalArgumentException("bad line \"" + line + "");
-            }
-            last = tree.makeClass(parts[0], parts[1]);
+            throw new MappingFormatException(lineNumber, 2, "expected 2 or 3 names in member line, got " + count);
+          }
+        } else {
+          if (count != 2) {
+            throw new MappingFormatException(lineNumber, 1, "expected 2 names in class line, got " + count);
           }
-        } catch (Throwable ex) {
-          System.err.println("Error emerged on line \"" + line + "\"!");
-          throw ex;
+          last = tree.makeClass(intern(pool, chars, tokens, 0), token(chars, tokens, 1));
+        }
+      } catch (MappingFormatException ex) {
+        throw ex;
+      } catch (RuntimeException ex) {
+        throw new MappingFormatException(lineNumber, 1, "failed to add \"" + new String(chars, lineStart, lineEnd - lineStart) + "\"", ex);
+      }
+    }
+    return lineNumber;
+  }
+
+  /**
+   * Splits a line on single spaces like {@code String.split(" ")}, dropping trailing empty tokens.
+   *
+   * @return the number of tokens
+   */
+  private static int tokenize(char[] chars, int start, int end, int[] tokens, int max, int lineNumber, int lineStart) {
+    while (end > start && chars[end - 1] == ' ') {
+      end--;
+    }
+    if (end == start) {
+      throw new MappingFormatException(lineNumber, start - lineStart + 1, "empty line");
+    }
+    int count = 0;
+    int tokenStart = start;
+    for (int i = start; i < end; i++) {
+      if (chars[i] == ' ') {
+        if (count == max - 1) {
+          throw new MappingFormatException(lineNumber, i - lineStart + 1, "too many names, expected at most " + max);
         }
+        tokens[count * 2] = tokenStart;
+        tokens[count * 2 + 1] = i;
+        count++;
+        tokenStart = i + 1;
       }
+    }
+    tokens[count * 2] = tokenStart;
+    tokens[count * 2 + 1] = end;
+    return count + 1;
+  }
+
+  private static boolean rangeEquals(char[] chars, int start, int end, int otherStart, int otherEnd) {
+    if (end - start != otherEnd - otherStart) {
+      return false;
+    }
+    for (int i = start, j = otherStart; i < end; i++, j++) {
+      if (chars[i] != chars[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String intern(StringPool pool, char[] chars, int[] tokens, int index) {
+    return pool.intern(chars, tokens[index * 2], tokens[index * 2 + 1] - tokens[index * 2]);
+  }
+
+  // srg names are unique, so pooling them would only grow the pool
+  private static String token(char[] chars, int[] tokens, int index) {
+    return new String(chars, tokens[index * 2], tokens[index * 2 + 1] - tokens[index * 2]);
+  }
+
+  private static ByteBuffer readFully(InputStream in) throws IOException {
+    byte[] buffer = new byte[Math.max(in.available(), 8192)];
+    int length = 0;
+    int read;
+    while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+      length += read;
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+    }
+    return ByteBuffer.wrap(buffer, 0, length);
+  }
+
+  public static MissReport loadConstructorsSrg(McpTree tree, File ctorTxt) {
+    try (InputStream in = Files.newInputStream(ctorTxt.toPath())) {
+      return loadConstructorsSrg(tree, in);
     } catch (IOException ex) {
       throw new UncheckedIOException(ex);
     }
   }
 
-  public static void loadConstructorsSrg(McpTree tree, File ctorTxt) {
-    try (BufferedReader reader = Files.newBufferedReader(ctorTxt.toPath())) {
+  public static MissReport loadConstructorsSrg(McpTree tree, InputStream in) {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.LOAD_CONSTRUCTORS);
+    MissReport misses = new MissReport("constructors without a srg class");
+    CountingInputStream counted = new CountingInputStream(in);
+    int lines = 0;
+    try (BufferedReader reader = newReader(counted)) {
       String line;
       while ((line = reader.readLine()) != null) {
+        lines++;
         String[] parts = line.split(" ");
         // index owner desc
         if (parts.length != 3) {
           throw new IllegalArgumentException("bad line \"" + line + "");
         }
 
-        try {
-          tree.makeConstructor(parts[0], parts[1], parts[2]);
-        } catch (IllegalArgumentException ex) {
-          System.err.println(ex.getMessage());
+        if (tree.makeConstructorIfPresent(parts[0], parts[1], parts[2]) == null) {
+          misses.add(parts[1]);
         }
       }
     } catch (IOException ex) {
       throw new UncheckedIOException(ex);
     }
+    event.commit(counted.getCount(), lines, misses.getCount());
+    return misses;
   }
 
-  public static void loadStaticMethods(McpTree tree, File staticMethodsTxt) {
-    try (BufferedReader reader = Files.newBufferedReader(staticMethodsTxt.toPath())) {
+  public static MissReport loadStaticMethods(McpTree tree, File staticMethodsTxt) {
+    try (InputStream in = Files.newInputStream(staticMethodsTxt.toPath())) {
+      return loadStaticMethods(tree, in);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  public static MissReport loadStaticMethods(McpTree tree, InputStream in) {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.LOAD_STATIC_METHODS);
+    MissReport misses = new MissReport("static methods without a srg method");
+    CountingInputStream counted = new CountingInputStream(in);
+    int lines = 0;
+    try (BufferedReader reader = newReader(counted)) {
       String line;
       while ((line = reader.readLine()) != null) {
-        McpMethod method = tree.findMethod(line);
+        lines++;
+        @Nullable McpMethod method = tree.getMethod(line);
+        if (method == null) {
+          misses.add(line);
+          continue;
+        }
         method.setStaticModifier(true);
       }
     } catch (IOException ex) {
       throw new UncheckedIOException(ex);
     }
+    event.commit(counted.getCount(), lines, misses.getCount());
+    return misses;
   }
 
-  public static void loadMethodsMcp(McpTree tree, File methodsCsv) {
-    // 0 srg; 1 name; 3 desc;
-    try (CSVParser parser = CSVParser.parse(methodsCsv, StandardCharsets.UTF_8, CSVFormat.DEFAULT)) {
-      boolean firstLine = true;
-      for (CSVRecord line : parser) {
-        if (firstLine) {
-          firstLine = false;
-          continue;
-        }
-        try {
-          McpMethod method = tree.findMethod(line.get(0));
-          method.setMcp(line.get(1));
-          String comment = line.get(3);
-          if (comment != null && !comment.isEmpty()) {
-            method.setComment(line.get(3));
-          }
-        } catch (IllegalArgumentException ex) {
-          System.err.println(ex.getMessage());
-        }
+  public static MissReport loadMethodsMcp(McpTree tree, File methodsCsv) {
+    try (InputStream in = Files.newInputStream(methodsCsv.toPath())) {
+      return loadMethodsMcp(tree, in);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  public static MissReport loadMethodsMcp(McpTree tree, InputStream in) {
+    return applyMethodsMcp(tree, readMcpCsv(in, true));
+  }
+
+  public static MissReport applyMethodsMcp(McpTree tree, List<McpNameEntry> entries) {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.APPLY_MCP_METHODS);
+    MissReport misses = new MissReport("methods.csv entries without a srg method");
+    for (McpNameEntry entry : entries) {
+      @Nullable McpMethod method = tree.getMethod(entry.getSrg());
+      if (method == null) {
+        misses.add(entry.getSrg());
+        continue;
+      }
+      method.setMcp(tree.getStringPool().intern(entry.getName()));
+      @Nullable String comment = entry.getComment();
+      if (comment != null) {
+        method.setComment(comment);
       }
+    }
+    event.commit(0, entries.size(), misses.getCount());
+    return misses;
+  }
+
+  public static MissReport loadFieldsMcp(McpTree tree, File fieldsCsv) {
+    try (InputStream in = Files.newInputStream(fieldsCsv.toPath())) {
+      return loadFieldsMcp(tree, in);
     } catch (IOException ex) {
       throw new UncheckedIOException(ex);
     }
   }
 
-  public static void loadFieldsMcp(McpTree tree, File methodsCsv) {
-    // 0 srg; 1 name; 3 desc;
-    try (CSVParser parser = CSVParser.parse(methodsCsv, StandardCharsets.UTF_8, CSVFormat.DEFAULT)) {
-      boolean firstLine = true;
-      for (CSVRecord line : parser) {
-        if (firstLine) {
-          firstLine = false;
-          continue;
-        }
-        try {
-          McpField field = tree.findField(line.get(0));
-          field.setMcp(line.get(1));
-          String comment = line.get(3);
-          if (comment != null && !comment.isEmpty()) {
-            field.setComment(line.get(3));
-          }
-        } catch (IllegalArgumentException ex) {
-          System.err.println(ex.getMessage());
-        }
+  public static MissReport loadFieldsMcp(McpTree tree, InputStream in) {
+    return applyFieldsMcp(tree, readMcpCsv(in, true));
+  }
+
+  public static MissReport applyFieldsMcp(McpTree tree, List<McpNameEntry> entries) {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.APPLY_MCP_FIELDS);
+    MissReport misses = new MissReport("fields.csv entries without a srg field");
+    for (McpNameEntry entry : entries) {
+      @Nullable McpField field = tree.getField(entry.getSrg());
+      if (field == null) {
+        misses.add(entry.getSrg());
+        continue;
+      }
+      field.setMcp(tree.getStringPool().intern(entry.getName()));
+      @Nullable String comment = entry.getComment();
+      if (comment != null) {
+        field.setComment(comment);
       }
+    }
+    event.commit(0, entries.size(), misses.getCount());
+    return misses;
+  }
+
+  public static MissReport loadParamsMcp(McpTree tree, File paramsCsv) {
+    try (InputStream in = Files.newInputStream(paramsCsv.toPath())) {
+      return loadParamsMcp(tree, in);
     } catch (IOException ex) {
       throw new UncheckedIOException(ex);
     }
   }
 
-  public static void loadParamsMcp(McpTree tree, File methodsCsv) {
-    // 0 srg; 1 name;
-    try (CSVParser parser = CSVParser.parse(methodsCsv, StandardCharsets.UTF_8, CSVFormat.DEFAULT)) {
-      boolean firstLine = true;
-      for (CSVRecord line : parser) {
-        if (firstLine) {
-          firstLine = false;
-          continue;
-        }
-        try {
-          McpParam param = tree.makeParam(line.get(0));
-          param.setMcp(line.get(1));
-        } catch (IllegalArgumentException ex) {
-          System.err.println(ex.getMessage());
-        }
+  public static MissReport loadParamsMcp(McpTree tree, InputStream in) {
+    return applyParamsMcp(tree, readMcpCsv(in, false));
+  }
+
+  public static MissReport applyParamsMcp(McpTree tree, List<McpNameEntry> entries) {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.APPLY_MCP_PARAMS);
+    MissReport misses = new MissReport("params.csv entries without a srg method");
+    for (McpNameEntry entry : entries) {
+      @Nullable McpParam param;
+      try {
+        param = tree.makeParamIfPresent(entry.getSrg());
+      } catch (IllegalArgumentException ex) { // malformed name
+        param = null;
       }
+      if (param == null) {
+        misses.add(entry.getSrg());
+        continue;
+      }
+      param.setMcp(tree.getStringPool().intern(entry.getName()));
+    }
+    event.commit(0, entries.size(), misses.getCount());
+    return misses;
+  }
+
+  /**
+   * Reads the rows of an MCP snapshot csv without touching any tree, so it can run concurrently with
+   * other loading.
+   *
+   * @param in the csv input
+   * @param withComment whether to read the description column
+   * @return the rows, in file order
+   */
+  public static List<McpNameEntry> readMcpCsv(InputStream in, boolean withComment) {
+    LoaderEvent event = LoaderEvent.begin(LoaderEvent.Kind.READ_MCP_CSV);
+    CountingInputStream counted = new CountingInputStream(in);
+    try (Reader reader = new InputStreamReader(counted, StandardCharsets.UTF_8)) {
+      List<McpNameEntry> entries = new McpCsvReader(reader).readNameEntries(withComment);
+      event.commit(counted.getCount(), entries.size(), 0);
+      return entries;
     } catch (IOException ex) {
       throw new UncheckedIOException(ex);
     }
   }
 
+  private static BufferedReader newReader(InputStream in) {
+    return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
 }
@@ -0,0 +1,140 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.liachmodded.mcptiny.serde.TinyPrinter;
+import com.github.liachmodded.mcptiny.serde.TsrgLoader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import net.fabricmc.mapping.tree.TinyTree;
+import org.junit.Test;
+
+/**
+ * A tree printed after a snapshot write and read matches the tree it was taken from.
+ */
+public class McpTreeSnapshotTest {
+
+  private static final List<String> NAMESPACES = Arrays.asList("official", "intermediary", "named");
+  private static final String TINY = "tiny\t2\t0\tofficial\tintermediary\tnamed\n"
+      + "c\ta\tnet/minecraft/class_1\tnet/minecraft/client/Minecraft\n"
+      + "\tf\tLa;\tb\tfield_1\tinstance\n"
+      + "\t\tc\tThe \"current\" instance,\\tif any\\nor null\n"
+      + "\tm\t()La;\tc\tmethod_2\tgetInstance\n"
+      + "c\tb\tnet/minecraft/class_2\tnet/minecraft/util/Util\n"
+      + "\tf\tI\ta\tfield_3\tfield_3_a\n"
+      + "\tm\t(Lb;I)V\ta\tmethod_4\trun\n"
+      + "\t\tc\tRuns \\\\ something\n"
+      + "\t\tp\t0\t\t\tclient\n"
+      + "\t\tp\t1\t\t\ttimes\n";
+
+  @Test
+  public void roundTripsFrozenTree() throws IOException {
+    McpTree tree = tree().freeze();
+    assertEquals(TINY, print(tree));
+    McpTree read = McpTreeSnapshot.read(ByteBuffer.wrap(write(tree)));
+    assertTrue(read.isFrozen());
+    assertEquals(TINY, print(read));
+  }
+
+  @Test
+  public void roundTripsIntoCompactTree() throws IOException {
+    McpTree read = McpTreeSnapshot.read(ByteBuffer.wrap(write(tree().freeze())));
+    assertEquals(TINY, print(CompactMcpTree.of(read)));
+  }
+
+  @Test
+  public void keepsLoadingTreesMutable() throws IOException {
+    McpTree read = McpTreeSnapshot.read(ByteBuffer.wrap(write(tree())));
+    assertFalse(read.isFrozen());
+    assertEquals(TINY, print(read.freeze()));
+  }
+
+  @Test
+  public void writesSameBytesAgain() throws IOException {
+    byte[] snapshot = write(tree().freeze());
+    assertTrue(Arrays.equals(snapshot, write(McpTreeSnapshot.read(ByteBuffer.wrap(snapshot)))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOtherData() {
+    McpTreeSnapshot.read(ByteBuffer.wrap(TINY.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static McpTree tree() {
+    McpTree tree = new McpTree();
+    TsrgLoader.loadTsrg(tree, new ByteArrayInputStream(("a net/minecraft/client/Minecraft\n"
+        + "\tb field_1_b\n"
+        + "\tc ()La; func_2_c\n"
+        + "b net/minecraft/util/Util\n"
+        + "\ta field_3_a\n"
+        + "\ta (Lb;I)V func_4_a\n").getBytes(StandardCharsets.UTF_8)));
+    tree.getObfMap().get("a").setIntermediary("net/minecraft/class_1");
+    tree.getObfMap().get("b").setIntermediary("net/minecraft/class_2");
+
+    McpField instance = tree.findField("field_1_b");
+    instance.setIntermediary("field_1");
+    instance.setObfDesc("La;");
+    instance.setMcp("instance");
+    instance.setComment("The \"current\" instance,\tif any\nor null");
+    McpField count = tree.findField("field_3_a");
+    count.setIntermediary("field_3");
+    count.setObfDesc("I");
+
+    McpMethod getInstance = tree.findMethod("func_2_c");
+    getInstance.setIntermediary("method_2");
+    getInstance.setMcp("getInstance");
+    McpMethod run = tree.findMethod("func_4_a");
+    run.setIntermediary("method_4");
+    run.setMcp("run");
+    run.setStaticModifier(true);
+    run.setComment("Runs \\ something");
+    tree.makeParam("p_4_0_").setMcp("client");
+    tree.makeParam("p_4_1_").setMcp("times");
+    return tree;
+  }
+
+  private static byte[] write(McpTree tree) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    McpTreeSnapshot.write(tree, out);
+    return out.toByteArray();
+  }
+
+  private static String print(TinyTree tree) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TinyPrinter.print(out, tree, NAMESPACES);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
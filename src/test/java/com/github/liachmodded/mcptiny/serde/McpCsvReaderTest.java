@@ -0,0 +1,184 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.serde;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Quoting, line ends and blank lines in MCP snapshot csv files.
+ */
+public class McpCsvReaderTest {
+
+  @Test
+  public void readsPlainRows() throws IOException {
+    assertEquals(Arrays.asList("func_1_a|foo|Does foo.", "func_2_b|bar|-"),
+        read("searge,name,side,desc\nfunc_1_a,foo,0,Does foo.\nfunc_2_b,bar,2,\n", true));
+  }
+
+  @Test
+  public void readsQuotedFieldsWithCommasAndQuotes() throws IOException {
+    assertEquals(Arrays.asList("func_1_a|foo|Says \"hi\", then leaves", "func_2_b|bar|,"),
+        read("searge,name,side,desc\nfunc_1_a,foo,0,\"Says \"\"hi\"\", then leaves\"\nfunc_2_b,\"bar\",2,\",\"\n", true));
+  }
+
+  @Test
+  public void readsQuotedFieldsAcrossLines() throws IOException {
+    assertEquals(Arrays.asList("func_1_a|foo|First\nsecond", "func_2_b|bar|-"),
+        read("searge,name,side,desc\nfunc_1_a,foo,0,\"First\nsecond\"\nfunc_2_b,bar,2,\n", true));
+  }
+
+  @Test
+  public void allowsWhitespaceAfterQuotedFields() throws IOException {
+    assertEquals(Collections.singletonList("func_1_a|foo|Quoted"),
+        read("searge,name,side,desc\nfunc_1_a,\"foo\" ,0,\"Quoted\"\t\n", true));
+  }
+
+  @Test
+  public void readsCrlfLineEnds() throws IOException {
+    assertEquals(Arrays.asList("func_1_a|foo|Does foo.", "func_2_b|bar|Quoted\r\nline"),
+        read("searge,name,side,desc\r\nfunc_1_a,foo,0,Does foo.\r\nfunc_2_b,bar,2,\"Quoted\r\nline\"\r\n", true));
+  }
+
+  @Test
+  public void skipsBlankLines() throws IOException {
+    assertEquals(Arrays.asList("func_1_a|foo|-", "func_2_b|bar|-"),
+        read("searge,name,side,desc\n\nfunc_1_a,foo,0,\r\n\r\n\nfunc_2_b,bar,2,\n\n", true));
+  }
+
+  @Test
+  public void readsLastRowWithoutLineEnd() throws IOException {
+    assertEquals(Collections.singletonList("func_1_a|foo|Does foo."),
+        read("searge,name,side,desc\nfunc_1_a,foo,0,Does foo.", true));
+  }
+
+  @Test
+  public void readsParamsByHeaderName() throws IOException {
+    assertEquals(Arrays.asList("p_1_1_|x|-", "p_i2_1_|y|-"),
+        read("param,name,side\np_1_1_,x,0\np_i2_1_,y,1\n", false));
+  }
+
+  @Test
+  public void locatesColumnsByHeader() throws IOException {
+    assertEquals(Collections.singletonList("func_1_a|foo|Does foo."),
+        read("desc,side,name,searge\nDoes foo.,0,foo,func_1_a\n", true));
+  }
+
+  @Test
+  public void readsEmptyFile() throws IOException {
+    assertTrue(read("", true).isEmpty());
+  }
+
+  @Test
+  public void rejectsUnknownHeader() throws IOException {
+    try {
+      read("srg,mcp\nfunc_1_a,foo\n", false);
+      fail();
+    } catch (MappingFormatException ex) {
+      assertEquals(1, ex.getLine());
+    }
+  }
+
+  @Test
+  public void rejectsMissingName() throws IOException {
+    try {
+      read("searge,name,side\nfunc_1_a,foo,0\nfunc_2_b\n", false);
+      fail();
+    } catch (MappingFormatException ex) {
+      assertEquals(3, ex.getLine());
+    }
+  }
+
+  @Test
+  public void rejectsUnterminatedQuote() throws IOException {
+    try {
+      read("searge,name,side,desc\nfunc_1_a,foo,0,\"open\n", true);
+      fail();
+    } catch (MappingFormatException ex) {
+      assertEquals(3, ex.getLine());
+    }
+  }
+
+  @Test
+  public void rejectsTextAfterClosingQuote() throws IOException {
+    try {
+      read("searge,name,side,desc\nfunc_1_a,\"foo\"bar,0,\n", true);
+      fail();
+    } catch (MappingFormatException ex) {
+      assertEquals(2, ex.getLine());
+      assertEquals(15, ex.getColumn());
+    }
+  }
+
+  /**
+   * Reads a csv both at once and one char at a time, so fields also cross buffer refills, and formats
+   * the rows as {@code srg|name|comment}, with {@code -} for no comment.
+   */
+  private static List<String> read(String csv, boolean withComment) throws IOException {
+    List<String> ret = format(new McpCsvReader(new StringReader(csv)).readNameEntries(withComment));
+    assertEquals(ret, format(new McpCsvReader(new OneCharReader(csv)).readNameEntries(withComment)));
+    return ret;
+  }
+
+  private static List<String> format(List<McpNameEntry> entries) {
+    List<String> ret = new ArrayList<>(entries.size());
+    for (McpNameEntry entry : entries) {
+      String comment = entry.getComment();
+      ret.add(entry.getSrg() + "|" + entry.getName() + "|" + (comment == null ? "-" : comment));
+    }
+    return ret;
+  }
+
+  private static final class OneCharReader extends Reader {
+
+    private final Reader delegate;
+
+    OneCharReader(String s) {
+      this.delegate = new StringReader(s);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      return delegate.read(buffer, offset, Math.min(length, 1));
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org>
+ */
+package com.github.liachmodded.mcptiny.serde;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.github.liachmodded.mcptiny.model.McpClass;
+import com.github.liachmodded.mcptiny.model.McpField;
+import com.github.liachmodded.mcptiny.model.McpMethod;
+import com.github.liachmodded.mcptiny.model.McpTree;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Line handling and errors of the in-place tsrg scanner.
+ */
+public class TsrgLoaderTest {
+
+  private static final String TSRG = "a net/minecraft/client/Minecraft\n"
+      + "\tb field_1_b\n"
+      + "\tc ()La; func_2_c\n"
+      + "\tequals (Ljava/lang/Object;)Z equals\n"
+      + "\tx x\n"
+      + "b net/minecraft/util/Util\n"
+      + "\ta field_3_a\n"
+      + "\ta (Lb;)V func_4_a\n";
+  private static final List<String> LOADED = Arrays.asList(
+      "a net/minecraft/client/Minecraft", "\tb field_1_b", "\tc ()La; func_2_c",
+      "b net/minecraft/util/Util", "\ta field_3_a", "\ta (Lb;)V func_4_a");
+
+  @Test
+  public void loadsClassesAndMembers() {
+    McpTree tree = load(TSRG);
+    assertEquals(LOADED, describe(tree));
+    McpField field = tree.findField("field_1_b");
+    assertEquals("b", field.getObf());
+    McpMethod method = tree.findMethod("func_2_c");
+    assertEquals("c", method.getObf());
+    assertEquals("()La;", method.getDescriptor("official"));
+  }
+
+  @Test
+  public void skipsMembersMappedToThemselves() {
+    McpTree tree = load(TSRG);
+    assertNull(tree.getMethod("equals"));
+    assertNull(tree.getField("x"));
+  }
+
+  @Test
+  public void readsCrlfLineEnds() {
+    assertEquals(LOADED, describe(load(TSRG.replace("\n", "\r\n"))));
+  }
+
+  @Test
+  public void readsLastLineWithoutLineEnd() {
+    assertEquals(LOADED, describe(load(TSRG.substring(0, TSRG.length() - 1))));
+  }
+
+  @Test
+  public void ignoresTrailingSpaces() {
+    assertEquals(LOADED, describe(load(TSRG.replace("\n", "  \n"))));
+  }
+
+  @Test
+  public void rejectsBlankLines() {
+    assertError("a net/minecraft/client/Minecraft\n\n\tb field_1_b\n", 2);
+    assertError("a net/minecraft/client/Minecraft\r\n\r\n\tb field_1_b\r\n", 2);
+  }
+
+  @Test
+  public void rejectsMemberBeforeClass() {
+    assertError("\tb field_1_b\n", 1);
+  }
+
+  @Test
+  public void rejectsWrongNameCounts() {
+    assertError("a net/minecraft/client/Minecraft extra\n", 1);
+    assertError("a net/minecraft/client/Minecraft\n\tc ()La; func_2_c extra\n", 2);
+    assertError("a\n", 1);
+  }
+
+  private static McpTree load(String tsrg) {
+    McpTree tree = new McpTree();
+    TsrgLoader.loadTsrg(tree, new ByteArrayInputStream(tsrg.getBytes(StandardCharsets.UTF_8)));
+    return tree;
+  }
+
+  private static void assertError(String tsrg, int line) {
+    try {
+      load(tsrg);
+      fail();
+    } catch (MappingFormatException ex) {
+      assertEquals(line, ex.getLine());
+    }
+  }
+
+  private static List<String> describe(McpTree tree) {
+    List<String> ret = new ArrayList<>();
+    for (McpClass clazz : tree.getObfMap().values()) {
+      ret.add(clazz.getObf() + " " + clazz.getSrg());
+      for (McpField field : clazz.getMcpFields()) {
+        ret.add("\t" + field.getObf() + " " + field.getSrg());
+      }
+      for (McpMethod method : clazz.getMcpMethods()) {
+        ret.add("\t" + method.getObf() + " " + method.getDescriptor("official") + " " + method.getSrg());
+      }
+    }
+    return ret;
+  }
+}